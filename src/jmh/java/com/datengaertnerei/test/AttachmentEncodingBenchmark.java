@@ -0,0 +1,61 @@
+package com.datengaertnerei.test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.serializer.TypeSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Base64 encoding of attachment content as done by saveAttachment while the
+ * request is written, without the network transfer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class AttachmentEncodingBenchmark {
+
+  @Param({"65536", "4194304"})
+  int size;
+
+  private TestlinkAttachment attachment;
+  private TypeSerializer serializer;
+
+  /** Creates an attachment with random, incompressible content. */
+  @Setup
+  public void setUp() throws SAXException {
+    byte[] content = new byte[size];
+    new Random(4711).nextBytes(content);
+    attachment = TestlinkAttachment.of("screenshot.png", ByteBuffer.wrap(content), "image/png");
+    serializer = new TestlinkTypeFactory(new XmlRpcClient()).getSerializer(null, attachment);
+  }
+
+  @Benchmark
+  public void encode(Blackhole blackhole) throws SAXException {
+    serializer.write(new DefaultHandler() {
+      @Override
+      public void characters(char[] ch, int start, int length) {
+        blackhole.consume(ch);
+        blackhole.consume(length);
+      }
+    }, attachment);
+  }
+}
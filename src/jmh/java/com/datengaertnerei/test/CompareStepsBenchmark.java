@@ -0,0 +1,68 @@
+package com.datengaertnerei.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.eti.kinoshita.testlinkjavaapi.model.TestCaseStep;
+
+/** Step comparison deciding about new test case versions. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class CompareStepsBenchmark {
+
+  @Param({"10", "1000", "10000"})
+  int steps;
+
+  private List<TestCaseStep> current;
+  private List<TestCaseStep> existing;
+  private List<TestCaseStep> changed;
+
+  /** Creates equal step lists in different order and a list differing in the last step. */
+  @Setup
+  public void setUp() {
+    current = steps("Execute method testMethod", steps);
+    existing = steps("Execute method testMethod", steps);
+    Collections.shuffle(existing, new Random(4711));
+    changed = steps("Execute method testMethod", steps);
+    changed.get(steps - 1).setActions("Execute method renamedMethod");
+  }
+
+  private static List<TestCaseStep> steps(String action, int count) {
+    List<TestCaseStep> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      TestCaseStep step = new TestCaseStep();
+      step.setActions(action + i);
+      result.add(step);
+    }
+    return result;
+  }
+
+  @Benchmark
+  public boolean equalSteps() {
+    return TestlinkIntegrationContext.compareSteps(current, existing);
+  }
+
+  @Benchmark
+  public boolean changedSteps() {
+    return TestlinkIntegrationContext.compareSteps(changed, existing);
+  }
+}
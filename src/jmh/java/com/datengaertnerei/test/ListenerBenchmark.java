@@ -0,0 +1,104 @@
+package com.datengaertnerei.test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.testng.ITestResult;
+
+import br.eti.kinoshita.testlinkjavaapi.model.TestProject;
+
+/**
+ * Collection of results by the listener callbacks. Each invocation records a
+ * fixed batch of results per thread into a fresh listener, so memory stays
+ * bounded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 20)
+@Measurement(iterations = 50)
+public class ListenerBenchmark {
+
+  private TestlinkIntegrationListener listener;
+
+  /**
+   * Synthetic results of one benchmark thread, in test classes of their own or
+   * in test cases shared by all threads.
+   */
+  @State(Scope.Thread)
+  public static class Results {
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    @Param({"1000"})
+    int resultsPerThread;
+
+    @Param({"false", "true"})
+    boolean sharedCases;
+
+    ITestResult[] passed;
+    ITestResult[] failed;
+
+    /** Creates the results, 10 methods per test case. */
+    @Setup(Level.Trial)
+    public void setUp() {
+      int thread = THREADS.incrementAndGet();
+      passed = new ITestResult[resultsPerThread];
+      failed = new ITestResult[resultsPerThread];
+      Throwable failure = new AssertionError("expected [true] but found [false]");
+      for (int i = 0; i < resultsPerThread; i++) {
+        String className = sharedCases ? "com.example.SharedTest" + (i / 10)
+            : "com.example.Thread" + thread + "Test" + (i / 10);
+        Object[] parameters = {"value" + i, i};
+        passed[i] = SyntheticTestResult.create(className, className, "testMethod" + (i % 10),
+            parameters, null, 1000L, 2500L);
+        failed[i] = SyntheticTestResult.create(className, className, "testMethod" + (i % 10),
+            parameters, failure, 1000L, 2500L);
+      }
+    }
+  }
+
+  /** Starts with an empty listener for every iteration. */
+  @Setup(Level.Iteration)
+  public void setUp() {
+    listener = new TestlinkIntegrationListener();
+    listener.startCollecting(new TestlinkProject(new TestProject()));
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void onTestSuccess(Results results) {
+    for (ITestResult result : results.passed) {
+      listener.onTestSuccess(result);
+    }
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void onTestFailure(Results results) {
+    for (ITestResult result : results.failed) {
+      listener.onTestFailure(result);
+    }
+  }
+
+  @Benchmark
+  public void createTestStep(Results results, Blackhole blackhole) {
+    for (ITestResult result : results.passed) {
+      blackhole.consume(listener.createTestStep(result));
+    }
+  }
+}
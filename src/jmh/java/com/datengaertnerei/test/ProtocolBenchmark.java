@@ -0,0 +1,73 @@
+package com.datengaertnerei.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.datengaertnerei.test.TestlinkStep.TestStatus;
+
+/** Parameter printing and execution protocol building of the upload. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class ProtocolBenchmark {
+
+  @Param({"10", "100"})
+  int steps;
+
+  private Object[] parameters;
+  private TestlinkCase tlCase;
+
+  /** Creates a test case with every tenth step failed. */
+  @Setup
+  public void setUp() {
+    parameters = new Object[] {"user@example.com", 42, 3.5d, TestStatus.PASSED};
+    TestlinkStackTraces stackTraces = TestlinkStackTraces.fromSystemProperties();
+    Throwable failure = new AssertionError("expected [1] but found [2]");
+    tlCase = new TestlinkCase("com.example.ProtocolTest");
+    tlCase.addDuration(90000);
+    for (int i = 0; i < steps; i++) {
+      TestlinkStep step = new TestlinkStep("testMethod" + i, TestlinkStep.printParameters(parameters));
+      if (i % 10 == 9) {
+        step.setStatus(TestStatus.FAILED);
+        step.setFailure(stackTraces.of(failure));
+      } else {
+        step.setStatus(TestStatus.PASSED);
+      }
+      tlCase.addStep(step);
+    }
+  }
+
+  @Benchmark
+  public String printParameters() {
+    return TestlinkStep.printParameters(parameters);
+  }
+
+  @Benchmark
+  public void buildProtocol(Blackhole blackhole) {
+    StringBuilder protocol = new StringBuilder();
+    TestlinkUploader.fillTestStepExecutionProtocol(tlCase, protocol);
+    Map<String, String> stepsByFingerprint = new HashMap<>();
+    for (TestlinkStep step : tlCase.getSteps()) {
+      blackhole.consume(TestlinkUploader.createTestCaseStep(step));
+      TestlinkUploader.fillTestStepExecutionProtocol(protocol, step, stepsByFingerprint);
+    }
+    blackhole.consume(protocol.toString());
+  }
+}
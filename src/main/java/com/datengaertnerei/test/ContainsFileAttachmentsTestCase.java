@@ -0,0 +1,8 @@
+package com.datengaertnerei.test;
+
+import java.util.List;
+
+public interface ContainsFileAttachmentsTestCase {
+
+  public List<TestlinkAttachment> getFileAttachments(String testMethod);
+}
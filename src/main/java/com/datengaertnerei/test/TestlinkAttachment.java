@@ -0,0 +1,204 @@
+package com.datengaertnerei.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+import jakarta.xml.soap.AttachmentPart;
+import jakarta.xml.soap.SOAPException;
+
+/**
+ * File attachment for a test execution. The content is read from a file, a
+ * ByteBuffer or an AttachmentPart only while it is uploaded, large files are
+ * memory-mapped.
+ *
+ * @author Jens Dibbern
+ */
+public class TestlinkAttachment {
+
+	private static final long MAP_THRESHOLD = 1024L * 1024L;
+
+	private final String title;
+	private final String fileName;
+	private final String contentType;
+	private final Path file;
+	private final ByteBuffer buffer;
+	private final AttachmentPart part;
+
+	private TestlinkAttachment(String title, String fileName, String contentType, Path file, ByteBuffer buffer,
+			AttachmentPart part) {
+		this.title = title;
+		this.fileName = fileName;
+		this.contentType = contentType;
+		this.file = file;
+		this.buffer = buffer;
+		this.part = part;
+	}
+
+	/**
+	 * Creates an attachment for a file.
+	 *
+	 * @param file        the file to attach
+	 * @param contentType the MIME type of the file
+	 * @return the attachment
+	 */
+	public static TestlinkAttachment of(Path file, String contentType) {
+		String fileName = file.getFileName().toString();
+		return of(file, fileName, fileName, contentType);
+	}
+
+	/**
+	 * Creates an attachment for a file.
+	 *
+	 * @param file        the file to attach
+	 * @param title       the attachment title in TestLink
+	 * @param fileName    the file name in TestLink
+	 * @param contentType the MIME type of the file
+	 * @return the attachment
+	 */
+	public static TestlinkAttachment of(Path file, String title, String fileName, String contentType) {
+		return new TestlinkAttachment(title, fileName, contentType, file, null, null);
+	}
+
+	/**
+	 * Creates an attachment for buffered content. The buffer is not copied, the
+	 * remaining bytes are uploaded.
+	 *
+	 * @param fileName    the file name in TestLink
+	 * @param content     the content
+	 * @param contentType the MIME type of the content
+	 * @return the attachment
+	 */
+	public static TestlinkAttachment of(String fileName, ByteBuffer content, String contentType) {
+		return new TestlinkAttachment(fileName, fileName, contentType, null, content.asReadOnlyBuffer(), null);
+	}
+
+	/**
+	 * Wraps a SOAP attachment part.
+	 *
+	 * @param attachment the attachment part
+	 * @return the attachment
+	 */
+	static TestlinkAttachment of(AttachmentPart attachment) {
+		return new TestlinkAttachment(
+				attachment.getContentId() == null ? attachment.toString() : attachment.getContentId(),
+				attachment.getContentLocation() == null ? attachment.toString() : attachment.getContentLocation(),
+				attachment.getContentType(), null, null, attachment);
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Provides the file of the attachment.
+	 *
+	 * @return the file or null if the content is not read from a file
+	 */
+	Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Provides the content size.
+	 *
+	 * @return the size in bytes or -1 if unknown
+	 */
+	public long getSize() {
+		try {
+			if (null != file) {
+				return Files.size(file);
+			} else if (null != buffer) {
+				return buffer.remaining();
+			}
+			return part.getSize();
+		} catch (IOException | SOAPException unknownSize) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Calculates a hash of the content, e.g. to detect duplicate attachments.
+	 *
+	 * @return the hex encoded SHA-256 hash of the content
+	 * @throws IOException if the content cannot be read
+	 */
+	public String getContentHash() throws IOException {
+		MessageDigest digest = TestlinkHashes.sha256();
+		byte[] chunk = new byte[8192];
+		try (InputStream content = new DigestInputStream(openStream(), digest)) {
+			while (content.read(chunk) >= 0) {
+				// digest is updated while reading
+			}
+		}
+		return TestlinkHashes.hex(digest.digest());
+	}
+
+	/**
+	 * Opens a new stream of the raw content.
+	 *
+	 * @return the content stream, to be closed by the caller
+	 * @throws IOException if the content cannot be read
+	 */
+	public InputStream openStream() throws IOException {
+		if (null != file) {
+			if (Files.size(file) < MAP_THRESHOLD) {
+				return Files.newInputStream(file);
+			}
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			}
+		} else if (null != buffer) {
+			return new ByteBufferInputStream(buffer.duplicate());
+		}
+
+		try {
+			return part.getRawContent();
+		} catch (SOAPException partException) {
+			throw new IOException("Cannot read attachment " + title, partException);
+		}
+	}
+
+	/** Stream view on a ByteBuffer. */
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer content;
+
+		ByteBufferInputStream(ByteBuffer content) {
+			this.content = content;
+		}
+
+		@Override
+		public int read() {
+			return content.hasRemaining() ? content.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (!content.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(length, content.remaining());
+			content.get(bytes, offset, count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return content.remaining();
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package com.datengaertnerei.test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Attachment processor with per content type rules. A policy is a semicolon
+ * separated list of rules, the first rule with a matching content type
+ * applies:
+ *
+ * <pre>
+ * image/png=maxdim:1600,jpeg:0.8;text/*=gzip;*=maxsize:10485760
+ * </pre>
+ *
+ * Supported actions are maxsize (skip larger attachments, in bytes), maxdim
+ * (downscale images to the maximum width/height in pixels), jpeg (re-encode
+ * images as JPEG with the given quality) and gzip (compress the content).
+ * Images within the maximum dimension are only re-encoded for jpeg. Processed
+ * content is written to temporary files, which are deleted on release.
+ *
+ * @author Jens Dibbern
+ */
+public class TestlinkAttachmentPolicy implements TestlinkAttachmentProcessor {
+	private static Log log = LogFactory.getLog(TestlinkAttachmentPolicy.class);
+
+	private static final String CFG_POLICY = "TestlinkIntegrationListener.AttachmentPolicy";
+	private static final String CFG_PROCESSOR = "TestlinkIntegrationListener.AttachmentProcessor";
+
+	private final List<Rule> rules = new ArrayList<>();
+	private final AtomicLong bytesBefore = new AtomicLong();
+	private final AtomicLong bytesAfter = new AtomicLong();
+	private final Set<Path> tempFiles = ConcurrentHashMap.newKeySet();
+
+	/** Processing rule for one content type pattern. */
+	private static class Rule {
+		private String contentTypePattern;
+		private long maxSize = -1;
+		private int maxDimension;
+		private float jpegQuality;
+		private boolean gzip;
+
+		private boolean matches(String contentType) {
+			if ("*".equals(contentTypePattern)) {
+				return true;
+			} else if (null == contentType) {
+				return false;
+			} else if (contentTypePattern.endsWith("/*")) {
+				return contentType.startsWith(contentTypePattern.substring(0, contentTypePattern.length() - 1));
+			}
+			return contentType.equalsIgnoreCase(contentTypePattern);
+		}
+	}
+
+	/**
+	 * Creates a new policy.
+	 *
+	 * @param policy the policy rules
+	 * @throws IllegalArgumentException if the policy is invalid
+	 */
+	public TestlinkAttachmentPolicy(String policy) {
+		for (String ruleText : policy.split(";")) {
+			if (ruleText.trim().isEmpty()) {
+				continue;
+			}
+			String[] ruleParts = ruleText.split("=", 2);
+			Rule rule = new Rule();
+			rule.contentTypePattern = ruleParts[0].trim();
+			for (String action : ruleParts.length > 1 ? ruleParts[1].split(",") : new String[0]) {
+				String[] actionParts = action.trim().split(":", 2);
+				String value = actionParts.length > 1 ? actionParts[1].trim() : null;
+				try {
+					switch (actionParts[0]) {
+					case "maxsize":
+						rule.maxSize = Long.parseLong(requireValue(action, value));
+						break;
+					case "maxdim":
+						rule.maxDimension = Integer.parseInt(requireValue(action, value));
+						break;
+					case "jpeg":
+						rule.jpegQuality = Float.parseFloat(requireValue(action, value));
+						break;
+					case "gzip":
+						rule.gzip = true;
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown attachment policy action: " + action);
+					}
+				} catch (NumberFormatException valueException) {
+					throw new IllegalArgumentException("Invalid attachment policy value: " + action, valueException);
+				}
+			}
+			rules.add(rule);
+		}
+	}
+
+	private static String requireValue(String action, String value) {
+		if (null == value || value.isEmpty()) {
+			throw new IllegalArgumentException("Attachment policy action without value: " + action);
+		}
+		return value;
+	}
+
+	/**
+	 * Provides the configured attachment processor. A custom processor class is
+	 * preferred to a policy, no processing takes place if none is configured. An
+	 * invalid configuration is logged and attachments are uploaded unprocessed.
+	 *
+	 * @return the processor or null
+	 */
+	public static TestlinkAttachmentProcessor fromSystemProperties() {
+		String processorClass = System.getProperty(CFG_PROCESSOR);
+		if (null != processorClass) {
+			try {
+				return (TestlinkAttachmentProcessor) Class.forName(processorClass).getConstructor().newInstance();
+			} catch (ReflectiveOperationException | ClassCastException | LinkageError processorException) {
+				log.error("Invalid attachment processor " + processorClass + ", attachments are not processed.",
+						processorException);
+				return null;
+			}
+		}
+		String policy = System.getProperty(CFG_POLICY);
+		if (null == policy) {
+			return null;
+		}
+		try {
+			return new TestlinkAttachmentPolicy(policy);
+		} catch (IllegalArgumentException policyException) {
+			log.error("Invalid attachment policy " + policy + ", attachments are not processed: "
+					+ policyException.getMessage());
+			return null;
+		}
+	}
+
+	@Override
+	public TestlinkAttachment process(TestlinkAttachment attachment) throws IOException {
+		Rule rule = rules.stream().filter(r -> r.matches(attachment.getContentType())).findFirst().orElse(null);
+		if (null == rule) {
+			return attachment;
+		}
+
+		long size = attachment.getSize();
+		bytesBefore.addAndGet(size);
+		if (rule.maxSize >= 0 && size > rule.maxSize) {
+			log.info(new StringBuilder("Attachment ").append(attachment.getTitle()).append(" skipped, ").append(size)
+					.append(" bytes"));
+			return null;
+		}
+
+		TestlinkAttachment result = attachment;
+		if ((rule.maxDimension > 0 || rule.jpegQuality > 0) && null != attachment.getContentType()
+				&& attachment.getContentType().startsWith("image/")) {
+			result = transcodeImage(result, rule);
+		}
+		if (rule.gzip) {
+			TestlinkAttachment transcoded = result;
+			result = gzip(transcoded);
+			if (transcoded != attachment) {
+				release(transcoded);
+			}
+		}
+
+		long processedSize = result.getSize();
+		bytesAfter.addAndGet(processedSize);
+		log.debug(new StringBuilder("Attachment ").append(attachment.getTitle()).append(": ").append(size)
+				.append(" -> ").append(processedSize).append(" bytes"));
+		return result;
+	}
+
+	@Override
+	public void release(TestlinkAttachment processed) {
+		Path file = processed.getFile();
+		if (null != file && tempFiles.remove(file)) {
+			delete(file);
+		}
+	}
+
+	/** Logs the total bytes before and after processing. */
+	public void logSummary() {
+		log.info(new StringBuilder("Attachment processing: ").append(bytesBefore.get()).append(" -> ")
+				.append(bytesAfter.get()).append(" bytes"));
+	}
+
+	private TestlinkAttachment transcodeImage(TestlinkAttachment attachment, Rule rule) throws IOException {
+		BufferedImage image;
+		try (InputStream content = attachment.openStream()) {
+			image = ImageIO.read(content);
+		}
+		if (null == image) {
+			return attachment; // no ImageIO reader for this format
+		}
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		boolean jpeg = rule.jpegQuality > 0;
+		if (rule.maxDimension > 0 && Math.max(width, height) > rule.maxDimension) {
+			double scale = (double) rule.maxDimension / Math.max(width, height);
+			width = Math.max(1, (int) Math.round(width * scale));
+			height = Math.max(1, (int) Math.round(height * scale));
+		} else if (!jpeg) {
+			return attachment; // small enough, re-encoding would not shrink it
+		}
+
+		String format = jpeg ? "jpeg" : "png";
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+		if (!writers.hasNext()) {
+			return attachment;
+		}
+
+		// JPEG has no alpha channel, paint transparent areas white
+		BufferedImage target = new BufferedImage(width, height,
+				jpeg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+		Graphics2D graphics = target.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.drawImage(image, 0, 0, width, height, jpeg ? Color.WHITE : null, null);
+		} finally {
+			graphics.dispose();
+		}
+
+		Path file = createTempFile(jpeg ? ".jpg" : ".png");
+		ImageWriter writer = writers.next();
+		try (ImageOutputStream output = ImageIO.createImageOutputStream(file.toFile())) {
+			writer.setOutput(output);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			if (jpeg) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(rule.jpegQuality);
+			}
+			writer.write(null, new IIOImage(target, null, null), param);
+		} catch (IOException | RuntimeException writeException) {
+			tempFiles.remove(file);
+			delete(file);
+			throw writeException;
+		} finally {
+			writer.dispose();
+		}
+
+		return TestlinkAttachment.of(file, attachment.getTitle(),
+				replaceExtension(attachment.getFileName(), jpeg ? ".jpg" : ".png"), "image/" + format);
+	}
+
+	private TestlinkAttachment gzip(TestlinkAttachment attachment) throws IOException {
+		Path file = createTempFile(".gz");
+		try (InputStream content = attachment.openStream();
+				OutputStream output = new GZIPOutputStream(Files.newOutputStream(file))) {
+			content.transferTo(output);
+		} catch (IOException compressionException) {
+			tempFiles.remove(file);
+			delete(file);
+			throw compressionException;
+		}
+		return TestlinkAttachment.of(file, attachment.getTitle(), attachment.getFileName() + ".gz",
+				"application/gzip");
+	}
+
+	private Path createTempFile(String suffix) throws IOException {
+		Path file = Files.createTempFile("tlngi-", suffix);
+		tempFiles.add(file);
+		return file;
+	}
+
+	private static void delete(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException deleteException) {
+			// e.g. a memory-mapped file on Windows
+			log.debug("Cannot delete " + file + ", deleting on exit.", deleteException);
+			file.toFile().deleteOnExit();
+		}
+	}
+
+	private String replaceExtension(String fileName, String extension) {
+		int dot = fileName.lastIndexOf('.');
+		return (dot > 0 ? fileName.substring(0, dot) : fileName) + extension;
+	}
+}
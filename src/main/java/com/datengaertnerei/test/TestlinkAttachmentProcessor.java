@@ -0,0 +1,31 @@
+package com.datengaertnerei.test;
+
+import java.io.IOException;
+
+/**
+ * Processing stage for attachments between collection and upload, e.g. to
+ * shrink screenshots or compress logs. Implementations must be thread-safe.
+ *
+ * @author Jens Dibbern
+ */
+public interface TestlinkAttachmentProcessor {
+
+	/**
+	 * Processes an attachment before upload.
+	 *
+	 * @param attachment the collected attachment
+	 * @return the attachment to upload, the original one or null to skip it
+	 * @throws IOException if the attachment cannot be processed
+	 */
+	public TestlinkAttachment process(TestlinkAttachment attachment) throws IOException;
+
+	/**
+	 * Releases a processed attachment after its upload, e.g. deletes its
+	 * temporary file. Not called for attachments returned unchanged.
+	 *
+	 * @param processed the attachment returned by process
+	 */
+	public default void release(TestlinkAttachment processed) {
+		// nothing to release by default
+	}
+}
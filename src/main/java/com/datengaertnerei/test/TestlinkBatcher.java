@@ -0,0 +1,238 @@
+package com.datengaertnerei.test;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcClient;
+
+/**
+ * Collects TestLink XML-RPC calls and sends them in batches via
+ * system.multicall. A batch is sent when it is full or when the linger time
+ * after its first call has passed. Calls rejected by the multicall, or all
+ * calls of a batch if the server does not support multicall or the multicall
+ * did not reach the server, are executed again one by one. If a multicall
+ * fails after it may have been executed, its calls fail without being
+ * repeated, so no result is stored twice.
+ *
+ * @author Jens Dibbern
+ */
+class TestlinkBatcher {
+	private static Log log = LogFactory.getLog(TestlinkBatcher.class);
+
+	private static final String MULTICALL = "system.multicall";
+	private static final String METHOD_NAME = "methodName";
+	private static final String PARAMS = "params";
+	private static final String FAULT_CODE = "faultCode";
+	private static final String FAULT_STRING = "faultString";
+
+	/** Executes a single call, used as fallback. */
+	@FunctionalInterface
+	interface SingleCall {
+		/**
+		 * Executes a single XML-RPC call.
+		 *
+		 * @param method the XML-RPC method
+		 * @param params the call parameters
+		 * @return the response
+		 * @throws XmlRpcException if the call fails
+		 */
+		Object execute(String method, Map<String, Object> params) throws XmlRpcException;
+	}
+
+	/** Pending call with the future for its response. */
+	private static class Call {
+		private final String method;
+		private final Map<String, Object> params;
+		private final CompletableFuture<Object> response = new CompletableFuture<>();
+
+		Call(String method, Map<String, Object> params) {
+			this.method = method;
+			this.params = params;
+		}
+	}
+
+	private final XmlRpcClient client;
+	private final TestlinkCallGuard guard;
+	private final SingleCall singleCall;
+	private final Executor executor;
+	private final int batchSize;
+	private final long lingerMillis;
+	private final ScheduledExecutorService scheduler;
+	private List<Call> pending = new ArrayList<>();
+	private volatile boolean multicallSupported = true;
+
+	/**
+	 * Creates a new batcher.
+	 *
+	 * @param client       the XML-RPC client for multicalls
+	 * @param guard        the guard for multicalls
+	 * @param singleCall   executes calls one by one as fallback
+	 * @param executor     executes the remote calls
+	 * @param batchSize    the maximum number of calls per batch
+	 * @param lingerMillis the maximum time a call waits for its batch to fill
+	 */
+	TestlinkBatcher(XmlRpcClient client, TestlinkCallGuard guard, SingleCall singleCall, Executor executor,
+			int batchSize, long lingerMillis) {
+		this.client = client;
+		this.guard = guard;
+		this.singleCall = singleCall;
+		this.executor = executor;
+		this.batchSize = batchSize;
+		this.lingerMillis = lingerMillis;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "TestlinkBatcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Adds a call to the current batch.
+	 *
+	 * @param method the XML-RPC method
+	 * @param params the call parameters, null values are omitted
+	 * @return the future response of the call, completed exceptionally with the
+	 *         exception of the call or of its multicall if it failed
+	 */
+	CompletableFuture<Object> submit(String method, Map<String, Object> params) {
+		Map<String, Object> callParams = new HashMap<>();
+		params.forEach((key, value) -> {
+			if (null != value) {
+				callParams.put(key, value);
+			}
+		});
+		Call call = new Call(method, callParams);
+
+		List<Call> batch = null;
+		synchronized (this) {
+			pending.add(call);
+			if (pending.size() >= batchSize) {
+				batch = pending;
+				pending = new ArrayList<>();
+			} else if (pending.size() == 1) {
+				List<Call> lingering = pending;
+				scheduler.schedule(() -> flush(lingering), lingerMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (null != batch) {
+			List<Call> fullBatch = batch;
+			executor.execute(() -> send(fullBatch));
+		}
+		return call.response;
+	}
+
+	/** Stops the linger timer, batches already waiting for it are still sent. */
+	void shutdown() {
+		scheduler.shutdown();
+	}
+
+	/**
+	 * Sends a lingering batch unless it has been sent because it was full.
+	 *
+	 * @param batch the batch pending when the timer was started
+	 */
+	private void flush(List<Call> batch) {
+		synchronized (this) {
+			if (pending != batch) {
+				return;
+			}
+			pending = new ArrayList<>();
+		}
+		executor.execute(() -> send(batch));
+	}
+
+	private void send(List<Call> batch) {
+		if (!multicallSupported || batch.size() == 1) {
+			batch.forEach(this::sendSingle);
+			return;
+		}
+
+		Object[] calls = new Object[batch.size()];
+		for (int i = 0; i < calls.length; i++) {
+			Map<String, Object> call = new HashMap<>();
+			call.put(METHOD_NAME, batch.get(i).method);
+			call.put(PARAMS, new Object[] { batch.get(i).params });
+			calls[i] = call;
+		}
+
+		Object[] responses;
+		try {
+			Object response = guard.call(MULTICALL, false, () -> client.execute(MULTICALL, new Object[] { calls }));
+			if (!(response instanceof Object[]) || ((Object[]) response).length != calls.length) {
+				throw new XmlRpcException("Unexpected multicall response: " + response);
+			}
+			responses = (Object[]) response;
+		} catch (XmlRpcException | TestlinkUnavailableException multicallException) {
+			String message = multicallException.getMessage();
+			if (multicallException instanceof XmlRpcException && null != message && message.contains(MULTICALL)) {
+				log.warn("Multicall not supported, sending calls one by one: " + message);
+				multicallSupported = false; // server does not know the method, no need to try again
+				batch.forEach(this::sendSingle);
+			} else if (isNotSent(multicallException)) {
+				log.warn("Multicall not sent, sending " + calls.length + " calls one by one: " + message);
+				batch.forEach(this::sendSingle);
+			} else {
+				// the server may have executed the calls, sending them again could store results twice
+				log.warn("Multicall failed, " + calls.length + " calls not confirmed: " + message);
+				batch.forEach(call -> call.response.completeExceptionally(multicallException));
+			}
+			return;
+		}
+
+		log.debug("Multicall sent " + calls.length + " calls.");
+		for (int i = 0; i < responses.length; i++) {
+			Object response = responses[i];
+			if (response instanceof Object[] && ((Object[]) response).length == 1) {
+				batch.get(i).response.complete(((Object[]) response)[0]);
+			} else {
+				if (response instanceof Map<?, ?>) {
+					log.debug("Multicall entry failed, sending it again: " + ((Map<?, ?>) response).get(FAULT_CODE)
+							+ " " + ((Map<?, ?>) response).get(FAULT_STRING));
+				}
+				sendSingle(batch.get(i));
+			}
+		}
+	}
+
+	/**
+	 * A multicall has provably not reached the server if the circuit was open or
+	 * the connection could not be established.
+	 *
+	 * @param multicallException the exception of the multicall
+	 * @return true if the calls of the batch can be sent again safely
+	 */
+	private static boolean isNotSent(Exception multicallException) {
+		if (multicallException instanceof TestlinkUnavailableException && null == multicallException.getCause()) {
+			return true; // rejected by the guard before sending
+		}
+		for (Throwable cause = multicallException; null != cause; cause = cause.getCause()) {
+			if (cause instanceof ConnectException || cause instanceof UnknownHostException) {
+				return true;
+			}
+			if (cause == cause.getCause()) {
+				break;
+			}
+		}
+		return false;
+	}
+
+	private void sendSingle(Call call) {
+		try {
+			call.response.complete(singleCall.execute(call.method, call.params));
+		} catch (XmlRpcException | RuntimeException callException) {
+			call.response.completeExceptionally(callException);
+		}
+	}
+}
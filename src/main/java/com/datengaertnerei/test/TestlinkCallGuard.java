@@ -0,0 +1,226 @@
+package com.datengaertnerei.test;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Central wrapper for remote TestLink calls. Network failures of idempotent
+ * calls are retried with jittered exponential backoff. The number of
+ * concurrent calls adapts to the server: it grows additively while calls are
+ * fast and shrinks multiplicatively on slow calls and failures. After
+ * repeated network failures the circuit opens and calls fail fast with a
+ * {@link TestlinkUnavailableException} until a trial call succeeds.
+ * <p>
+ * Errors reported by TestLink itself prove that the server is alive, they are
+ * passed on unchanged and never retried.
+ *
+ * @author Jens Dibbern
+ */
+class TestlinkCallGuard {
+	private static Log log = LogFactory.getLog(TestlinkCallGuard.class);
+
+	private static final String CFG_RETRIES = "TestlinkIntegrationContext.Retries";
+	private static final String CFG_RETRY_BACKOFF = "TestlinkIntegrationContext.RetryBackoff";
+	private static final String CFG_RETRY_BACKOFF_MAX = "TestlinkIntegrationContext.RetryBackoffMax";
+	private static final String CFG_SLOW_CALL = "TestlinkIntegrationContext.SlowCall";
+	private static final String CFG_FAILURE_THRESHOLD = "TestlinkIntegrationContext.FailureThreshold";
+	private static final String CFG_OPEN_TIME = "TestlinkIntegrationContext.CircuitOpenTime";
+	private static final double SLOW_DECREASE = 0.9;
+	private static final double FAILURE_DECREASE = 0.5;
+
+	/** Remote call to be guarded. */
+	@FunctionalInterface
+	interface RemoteCall<T, E extends Exception> {
+		/**
+		 * Executes the remote call.
+		 *
+		 * @return the call result
+		 * @throws E if the call fails
+		 */
+		T execute() throws E;
+	}
+
+	private final int retries;
+	private final long backoffMillis;
+	private final long maxBackoffMillis;
+	private final long slowCallNanos;
+	private final int failureThreshold;
+	private final long openNanos;
+	private final int maxLimit;
+	private final TestlinkMetrics metrics;
+
+	private double limit;
+	private int inFlight;
+	private int consecutiveFailures;
+	private long openUntil;
+	private boolean open;
+	private boolean trialRunning;
+
+	/**
+	 * Creates a new call guard.
+	 *
+	 * @param maxConcurrency   the upper bound of concurrent calls
+	 * @param retries          the number of retries of idempotent calls
+	 * @param backoffMillis    the initial backoff before a retry
+	 * @param maxBackoffMillis the maximum backoff before a retry
+	 * @param slowCallMillis   calls taking longer reduce the concurrency limit
+	 * @param failureThreshold consecutive network failures opening the circuit
+	 * @param openMillis       the time the circuit stays open before a trial
+	 * @param metrics          receives the duration of each call
+	 */
+	TestlinkCallGuard(int maxConcurrency, int retries, long backoffMillis, long maxBackoffMillis,
+			long slowCallMillis, int failureThreshold, long openMillis, TestlinkMetrics metrics) {
+		this.maxLimit = Math.max(1, maxConcurrency);
+		this.limit = maxLimit;
+		this.retries = retries;
+		this.backoffMillis = backoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+		this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+		this.failureThreshold = failureThreshold;
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Creates the call guard configured by system properties.
+	 *
+	 * @param maxConcurrency the upper bound of concurrent calls
+	 * @param metrics        receives the duration of each call
+	 * @return the call guard
+	 */
+	static TestlinkCallGuard fromSystemProperties(int maxConcurrency, TestlinkMetrics metrics) {
+		return new TestlinkCallGuard(maxConcurrency, Integer.getInteger(CFG_RETRIES, 3),
+				Long.getLong(CFG_RETRY_BACKOFF, 200), Long.getLong(CFG_RETRY_BACKOFF_MAX, 5000),
+				Long.getLong(CFG_SLOW_CALL, 5000), Integer.getInteger(CFG_FAILURE_THRESHOLD, 5),
+				Long.getLong(CFG_OPEN_TIME, 30000), metrics);
+	}
+
+	/**
+	 * Executes a remote call.
+	 *
+	 * @param method     the name of the remote method, for logging
+	 * @param idempotent true if the call may be repeated safely
+	 * @param remoteCall the remote call
+	 * @param <T>        the result type
+	 * @param <E>        the checked exception of the call
+	 * @return the call result
+	 * @throws E if TestLink reports an error
+	 */
+	<T, E extends Exception> T call(String method, boolean idempotent, RemoteCall<T, E> remoteCall) throws E {
+		for (int attempt = 0;; attempt++) {
+			enter(method);
+			long start = System.nanoTime();
+			try {
+				T result = remoteCall.execute();
+				long nanos = System.nanoTime() - start;
+				metrics.recordCall(method, nanos, false);
+				leave(nanos, false);
+				return result;
+			} catch (Exception callException) {
+				long nanos = System.nanoTime() - start;
+				metrics.recordCall(method, nanos, true);
+				if (!isNetworkFailure(callException)) {
+					leave(nanos, false);
+					throw callException;
+				}
+				leave(nanos, true);
+				if (!idempotent || attempt >= retries) {
+					throw new TestlinkUnavailableException(
+							"TestLink call " + method + " failed: " + callException.getMessage(), callException);
+				}
+				log.debug("Retrying TestLink call " + method + " after " + callException.getMessage());
+				backoff(method, attempt);
+			}
+		}
+	}
+
+	/**
+	 * Checks the circuit and waits for a free slot within the concurrency limit.
+	 *
+	 * @param method the name of the remote method
+	 */
+	private synchronized void enter(String method) {
+		if (open) {
+			if (System.nanoTime() < openUntil || trialRunning) {
+				throw new TestlinkUnavailableException("TestLink unavailable, call " + method + " not sent.");
+			}
+			trialRunning = true; // let one call find out if the server is back
+		}
+
+		boolean interrupted = false;
+		while (inFlight >= (int) limit) {
+			try {
+				wait();
+			} catch (InterruptedException interruptedException) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		inFlight++;
+	}
+
+	/**
+	 * Frees the slot of a call and adapts concurrency limit and circuit.
+	 *
+	 * @param nanos          the duration of the call
+	 * @param networkFailure true if the server could not be reached
+	 */
+	private synchronized void leave(long nanos, boolean networkFailure) {
+		inFlight--;
+		if (networkFailure) {
+			limit = Math.max(1, limit * FAILURE_DECREASE);
+			consecutiveFailures++;
+			if (trialRunning || (!open && consecutiveFailures >= failureThreshold)) {
+				log.warn("TestLink not reachable, suspending calls for "
+						+ TimeUnit.NANOSECONDS.toSeconds(openNanos) + " seconds.");
+				open = true;
+				openUntil = System.nanoTime() + openNanos;
+			}
+			trialRunning = false;
+		} else {
+			limit = nanos > slowCallNanos ? Math.max(1, limit * SLOW_DECREASE)
+					: Math.min(maxLimit, limit + 1 / limit);
+			consecutiveFailures = 0;
+			if (open) {
+				log.info("TestLink reachable again.");
+			}
+			open = false;
+			trialRunning = false;
+		}
+		notifyAll();
+	}
+
+	private void backoff(String method, int attempt) {
+		long ceiling = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt, 20));
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			throw new TestlinkUnavailableException("Interrupted while retrying " + method, interruptedException);
+		}
+	}
+
+	/**
+	 * Network failures are wrapped by the XML-RPC client and the TestLink API.
+	 *
+	 * @param callException the exception of a call
+	 * @return true if the exception is caused by an I/O problem
+	 */
+	private static boolean isNetworkFailure(Throwable callException) {
+		for (Throwable cause = callException; null != cause; cause = cause.getCause()) {
+			if (cause instanceof IOException) {
+				return true;
+			}
+			if (cause == cause.getCause()) {
+				break;
+			}
+		}
+		return false;
+	}
+}
@@ -1,19 +1,32 @@
 package com.datengaertnerei.test;
 
 import br.eti.kinoshita.testlinkjavaapi.constants.ExecutionStatus;
-import java.util.LinkedList;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Results of one test case, safe for concurrent updates by parallel test
+ * methods.
+ */
 public class TestlinkCase {
 
   private String testCaseName;
-  private ExecutionStatus status;
-  private String duration;
-  private List<TestlinkStep> steps;
+  private final AtomicReference<ExecutionStatus> status = new AtomicReference<>();
+  private final LongAdder durationMillis = new LongAdder();
+  private final Queue<TestlinkStep> steps = new ConcurrentLinkedQueue<>();
+  private Map<String, List<TestlinkAttachment>> attachments;
 
   public TestlinkCase(String testCaseName) {
     this.testCaseName = testCaseName;
-    this.steps = new LinkedList<>();
+    this.attachments = new ConcurrentHashMap<>();
   }
 
   public String getTestCaseName() {
@@ -24,23 +37,73 @@ public class TestlinkCase {
     steps.add(newStep);
   }
 
+  /**
+   * Provides a snapshot of the steps in the order they were added.
+   *
+   * @return the steps
+   */
   public List<TestlinkStep> getSteps() {
-    return steps;
+    return new ArrayList<>(steps);
+  }
+
+  public void addAttachment(String testMethod, TestlinkAttachment attachment) {
+    attachments.computeIfAbsent(testMethod, m -> new CopyOnWriteArrayList<>()).add(attachment);
+  }
+
+  public List<TestlinkAttachment> getAttachments(String testMethod) {
+    return attachments.getOrDefault(testMethod, new ArrayList<>());
+  }
+
+  public List<TestlinkAttachment> getAttachments() {
+    List<TestlinkAttachment> result = new ArrayList<>();
+    attachments.values().forEach(result::addAll);
+    return result;
   }
 
   public String getDuration() {
-    return duration;
+    Duration elapsedTime = Duration.ofMillis(getDurationMillis());
+    return String.format("%d hours, %d mins, %d seconds", elapsedTime.toHours(),
+        elapsedTime.toMinutesPart(), elapsedTime.toSecondsPart());
+  }
+
+  public long getDurationMillis() {
+    return durationMillis.sum();
   }
 
-  public void setDuration(String duration) {
-    this.duration = duration;
+  public void addDuration(long millis) {
+    durationMillis.add(millis);
   }
 
   public ExecutionStatus getStatus() {
-    return status;
+    return status.get();
+  }
+
+  /**
+   * Aggregates the status of a test method into the test case status. The more
+   * severe status wins: failed over blocked over passed over not run.
+   *
+   * @param stepStatus the status of a test method
+   */
+  public void updateStatus(ExecutionStatus stepStatus) {
+    if (null != stepStatus) {
+      status.accumulateAndGet(stepStatus,
+          (current, update) -> severity(update) > severity(current) ? update : current);
+    }
   }
 
-  public void setStatus(ExecutionStatus status) {
-    this.status = status;
+  private static int severity(ExecutionStatus status) {
+    if (null == status) {
+      return -1;
+    }
+    switch (status) {
+      case FAILED:
+        return 3;
+      case BLOCKED:
+        return 2;
+      case PASSED:
+        return 1;
+      default:
+        return 0;
+    }
   }
 }
@@ -0,0 +1,85 @@
+package com.datengaertnerei.test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Bounded executor for remote TestLink calls. Uses virtual threads if the
+ * runtime provides them and daemon platform threads otherwise.
+ *
+ * @author Jens Dibbern
+ */
+class TestlinkExecutor implements Executor {
+
+	private static Log log = LogFactory.getLog(TestlinkExecutor.class);
+
+	private final ExecutorService delegate;
+	private final Semaphore permits;
+
+	/**
+	 * Creates a new executor.
+	 *
+	 * @param concurrency the maximum number of concurrently running tasks
+	 */
+	TestlinkExecutor(int concurrency) {
+		ExecutorService virtualThreads = createVirtualThreadExecutor();
+		if (null != virtualThreads) {
+			// virtual threads are cheap, but TestLink is not - limit concurrent calls
+			delegate = virtualThreads;
+			permits = new Semaphore(concurrency);
+		} else {
+			AtomicInteger threadNumber = new AtomicInteger();
+			delegate = Executors.newFixedThreadPool(concurrency, task -> {
+				Thread thread = new Thread(task, "TestlinkExecutor-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			permits = null;
+		}
+		log.debug("TestlinkExecutor initialized with concurrency " + concurrency);
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		if (null == permits) {
+			delegate.execute(task);
+			return;
+		}
+
+		delegate.execute(() -> {
+			permits.acquireUninterruptibly();
+			try {
+				task.run();
+			} finally {
+				permits.release();
+			}
+		});
+	}
+
+	/** Stops accepting tasks, running tasks are completed. */
+	void shutdown() {
+		delegate.shutdown();
+	}
+
+	/**
+	 * Looks up the virtual thread executor by reflection to stay compatible with
+	 * older runtimes.
+	 *
+	 * @return the virtual thread executor or null if not available
+	 */
+	private static ExecutorService createVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException notAvailable) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.datengaertnerei.test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 hashes for content and fingerprints, hex encoded.
+ *
+ * @author Jens Dibbern
+ */
+final class TestlinkHashes {
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private TestlinkHashes() {
+		// static helpers only
+	}
+
+	/**
+	 * Creates a new SHA-256 digest.
+	 *
+	 * @return the digest
+	 */
+	static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException noSha256) {
+			throw new IllegalStateException(noSha256);
+		}
+	}
+
+	/**
+	 * Calculates the hex encoded SHA-256 hash of a text.
+	 *
+	 * @param text the text, hashed as UTF-8
+	 * @return the hex encoded hash
+	 */
+	static String sha256(String text) {
+		return hex(sha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Encodes bytes as lower case hex digits.
+	 *
+	 * @param bytes the bytes, e.g. a digest
+	 * @return the hex string
+	 */
+	static String hex(byte[] bytes) {
+		char[] result = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(result);
+	}
+}
@@ -1,28 +1,34 @@
 package com.datengaertnerei.test;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
 
 import br.eti.kinoshita.testlinkjavaapi.TestLinkAPI;
 import br.eti.kinoshita.testlinkjavaapi.constants.ActionOnDuplicate;
 import br.eti.kinoshita.testlinkjavaapi.constants.ExecutionStatus;
 import br.eti.kinoshita.testlinkjavaapi.constants.ExecutionType;
+import br.eti.kinoshita.testlinkjavaapi.constants.TestCaseDetails;
 import br.eti.kinoshita.testlinkjavaapi.constants.TestCaseStatus;
 import br.eti.kinoshita.testlinkjavaapi.constants.TestImportance;
 import br.eti.kinoshita.testlinkjavaapi.constants.TestLinkMethods;
@@ -37,10 +43,11 @@ import br.eti.kinoshita.testlinkjavaapi.model.TestSuite;
 import br.eti.kinoshita.testlinkjavaapi.util.TestLinkAPIException;
 import br.eti.kinoshita.testlinkjavaapi.util.Util;
 import jakarta.xml.soap.AttachmentPart;
-import jakarta.xml.soap.SOAPException;
 
 /**
- * Singleton integration context for TestLink API calls.
+ * Singleton integration context for TestLink API calls. The methods with
+ * suffix Async run on the bounded executor of the context and return futures
+ * which can be composed without blocking the caller.
  *
  * @author Jens Dibbern
  */
@@ -52,42 +59,178 @@ public class TestlinkIntegrationContext {
 	private static final String CFG_REMOTE_URL = "TestlinkIntegrationContext.RemoteURL";
 	private static final String CFG_API_KEY = "TestlinkIntegrationContext.APIKey";
 	private static final String CFG_USER = "TestlinkIntegrationContext.AutomationUser";
+	private static final String CFG_CONCURRENCY = "TestlinkIntegrationContext.Concurrency";
+	private static final int DEFAULT_CONCURRENCY = 4;
+	private static final String CFG_MAX_ATTACHMENT_SIZE = "TestlinkIntegrationContext.MaxAttachmentSize";
+	private static final long DEFAULT_MAX_ATTACHMENT_SIZE = 100L * 1024 * 1024;
+	private static final String CFG_ATTACHMENT_HEAP_BUDGET = "TestlinkIntegrationContext.AttachmentHeapBudget";
+	private static final long DEFAULT_ATTACHMENT_HEAP_BUDGET = 256L * 1024 * 1024;
+	private static final int KB = 1024;
+	private static final String CFG_BATCH_SIZE = "TestlinkIntegrationContext.BatchSize";
+	private static final String CFG_BATCH_LINGER = "TestlinkIntegrationContext.BatchLinger";
+	private static final long DEFAULT_BATCH_LINGER = 50;
+	private static final String CFG_OVERWRITE = "TestlinkIntegrationContext.Overwrite";
 
 	private static Log log = LogFactory.getLog(TestlinkIntegrationContext.class);
-	private static TestlinkIntegrationContext singletonInstance;
 	private String automationUser;
+	private String apiKey;
 	private TestLinkAPI remoteApi;
+	private XmlRpcClient rpcClient;
+	private TestlinkBatcher batcher;
+	/** Completes when the connection attempt is finished, successful or not. */
+	private final CompletableFuture<Void> connection;
+	private TestlinkExecutor executor;
+	private TestlinkTransport transport;
+	private TestlinkCallGuard guard;
+	private final TestlinkMetricsCollector metrics = new TestlinkMetricsCollector();
+	private long maxAttachmentSize;
+	/** Replace the last execution of a test case in the build instead of adding one. */
+	private boolean overwrite;
+	/** Limits the request buffers of concurrent attachment uploads, in KB. */
+	private Semaphore attachmentHeapBudget;
+	private int attachmentHeapBudgetKb;
+	private TestlinkMetadataCache metadataCache;
+	/** Builds fetched while validating a cached plan, consumed by getBuild. */
+	private final Map<Integer, Build[]> prefetchedBuilds = new ConcurrentHashMap<>();
+	/** Test cases per suite id by name, loaded once and updated locally. */
+	private final Map<Integer, Map<String, TestCase>> suiteIndex = new ConcurrentHashMap<>();
+	/** Test case id to version per plan/build, loaded once and updated locally. */
+	private final Map<String, Map<Integer, Integer>> planIndex = new ConcurrentHashMap<>();
 
 	/** Private ctor initializes singleton instance. */
 	private TestlinkIntegrationContext() {
-		String apiKey = System.getProperty(CFG_API_KEY);
-		String remoteUrl = System.getProperty(CFG_REMOTE_URL);
-		automationUser = System.getProperty(CFG_USER);
+		this(System.getProperty(CFG_REMOTE_URL), System.getProperty(CFG_API_KEY), System.getProperty(CFG_USER));
+	}
+
+	/**
+	 * Creates a context for the given TestLink server, e.g. a stub server in
+	 * tests. The other settings are taken from the system properties.
+	 *
+	 * @param remoteUrl      the TestLink XML-RPC URL
+	 * @param apiKey         the TestLink API key
+	 * @param automationUser the TestLink user of the automation
+	 */
+	TestlinkIntegrationContext(String remoteUrl, String apiKey, String automationUser) {
+		this.apiKey = apiKey;
+		this.automationUser = automationUser;
+		int concurrency = Integer.getInteger(CFG_CONCURRENCY, DEFAULT_CONCURRENCY);
+		executor = new TestlinkExecutor(concurrency);
+		transport = TestlinkTransport.fromSystemProperties();
+		transport.checkConnectionPool(concurrency);
+		guard = TestlinkCallGuard.fromSystemProperties(concurrency, metrics);
+		maxAttachmentSize = Long.getLong(CFG_MAX_ATTACHMENT_SIZE, DEFAULT_MAX_ATTACHMENT_SIZE);
+		overwrite = Boolean.getBoolean(CFG_OVERWRITE);
+		attachmentHeapBudgetKb = (int) Math.min(Integer.MAX_VALUE,
+				Long.getLong(CFG_ATTACHMENT_HEAP_BUDGET, DEFAULT_ATTACHMENT_HEAP_BUDGET) / KB);
+		attachmentHeapBudget = new Semaphore(attachmentHeapBudgetKb);
+		metadataCache = TestlinkMetadataCache.fromSystemProperties();
 
 		if (null != apiKey && null != remoteUrl) {
-			try {
-				remoteApi = new TestLinkAPI(new URL(remoteUrl), apiKey);
-				if (!remoteApi.doesUserExist(automationUser)) {
-					log.error("Automation user does not exist: " + automationUser);
-				}
-			} catch (TestLinkAPIException | MalformedURLException initException) {
-				log.fatal("Cannot establish remote TestLink connection", initException);
+			// the TestLink client checks the server on creation, tests start meanwhile
+			connection = CompletableFuture.runAsync(() -> connect(remoteUrl), task -> {
+				Thread thread = new Thread(task, "TestlinkConnect");
+				thread.setDaemon(true);
+				thread.start();
+			});
+		} else {
+			connection = CompletableFuture.completedFuture(null);
+		}
+	}
+
+	/**
+	 * Creates the TestLink clients and checks the automation user. Runs in the
+	 * background, remote calls wait for it in checkConnection. TestLink is
+	 * pinged with the configured transport first, as the TestLink API pings it
+	 * on creation without timeouts.
+	 *
+	 * @param remoteUrl the TestLink XML-RPC URL
+	 */
+	private void connect(String remoteUrl) {
+		long start = System.nanoTime();
+		try {
+			rpcClient = createRpcClient(new URL(remoteUrl));
+			guard.call("ping", true, () -> rpcClient.execute(TestLinkMethods.PING.toString(), new Object[0]));
+			TestLinkAPI api = new TestLinkAPI(new URL(remoteUrl), apiKey);
+			transport.install(api);
+			remoteApi = api;
+			int batchSize = Integer.getInteger(CFG_BATCH_SIZE, 0);
+			if (batchSize > 1) {
+				batcher = new TestlinkBatcher(rpcClient, guard,
+						(method, params) -> guard.call(method, false, () -> api.executeXmlRpcCall(method, params)),
+						executor, batchSize, Long.getLong(CFG_BATCH_LINGER, DEFAULT_BATCH_LINGER));
+			}
+			if (!guard.call("doesUserExist", true, () -> api.doesUserExist(automationUser))) {
+				log.error("Automation user does not exist: " + automationUser);
 			}
+			log.debug("TestLink connection established in " + (System.nanoTime() - start) / 1000000 + " ms.");
+		} catch (TestLinkAPIException | MalformedURLException | XmlRpcException initException) {
+			log.fatal("Cannot establish remote TestLink connection", initException);
 		}
 	}
 
 	/**
-	 * Access method to get the singleton instance.
+	 * Creates the XML-RPC client for attachment uploads and batches, which
+	 * encodes attachment content while the request is written. The request is
+	 * streamed to TestLink unless chunked requests are disabled or another
+	 * transport factory is configured, then it is buffered as a whole.
+	 *
+	 * @param remoteUrl the TestLink XML-RPC URL
+	 * @return the client
+	 */
+	private XmlRpcClient createRpcClient(URL remoteUrl) {
+		XmlRpcClientConfigImpl config = new XmlRpcClientConfigImpl();
+		config.setServerURL(remoteUrl);
+		XmlRpcClient client = new XmlRpcClient();
+		client.setConfig(config);
+		client.setTypeFactory(new TestlinkTypeFactory(client));
+		transport.configure(client, true);
+		return client;
+	}
+
+	/** Lazy initialization of the singleton by the class loader, without locking. */
+	private static class InstanceHolder {
+		private static final TestlinkIntegrationContext INSTANCE = new TestlinkIntegrationContext();
+	}
+
+	/**
+	 * Access method to get the singleton instance. The connection to TestLink is
+	 * established in the background, the first remote call waits for it.
 	 *
 	 * @return the singleton instance of the integration context
 	 */
-	public static synchronized TestlinkIntegrationContext getInstance() {
-		if (null == singletonInstance) {
-			singletonInstance = new TestlinkIntegrationContext();
-			log.debug("TestlinkIntegrationContext initialized.");
+	public static TestlinkIntegrationContext getInstance() {
+		return InstanceHolder.INSTANCE;
+	}
+
+	/**
+	 * Provides the bounded executor for concurrent remote calls.
+	 *
+	 * @return the executor shared by all uploads of this context
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Stops the threads of a context created for a single server, e.g. in tests,
+	 * after all uploads are finished. The singleton instance runs for the
+	 * lifetime of the JVM.
+	 */
+	void shutdown() {
+		connection.join();
+		if (null != batcher) {
+			batcher.shutdown();
 		}
+		executor.shutdown();
+	}
 
-		return singletonInstance;
+	/**
+	 * Provides the performance measurements of this context.
+	 *
+	 * @return the metrics
+	 */
+	public TestlinkMetricsCollector getMetrics() {
+		return metrics;
 	}
 
 	/**
@@ -98,24 +241,69 @@ public class TestlinkIntegrationContext {
 	 */
 	public TestlinkProject getProject(String projectName) {
 		checkConnection();
+		String cacheKey = "project." + projectName;
+		String[] cached = metadataCache.get(cacheKey);
+		if (null != cached) {
+			TestProject project = new TestProject();
+			project.setId(Integer.valueOf(cached[0]));
+			project.setName(projectName);
+			project.setPrefix(cached[1]);
+			TestPlan plan = getCachedPlan(project);
+			if (null != plan) {
+				TestlinkProject result = new TestlinkProject(project);
+				result.setPlan(plan);
+				return result;
+			}
+			// stale ids, resolve everything again
+			metadataCache.remove(cacheKey);
+			metadataCache.remove("plan." + project.getId());
+		}
+
 		TestProject project;
 		try {
-			project = remoteApi.getTestProjectByName(projectName);
+			project = guard.call("getTestProjectByName", true, () -> remoteApi.getTestProjectByName(projectName));
 		} catch (TestLinkAPIException notFoundException) {
 			checkApiExceptionNotFound(notFoundException);
 			// create project prefix by shortening project name
 			String[] projectNameParts = projectName.split("\\.");
 			String projectPrefix = projectNameParts[projectNameParts.length - 1].replaceAll("[AEIOUaeiou]", "");
 
-			project = remoteApi.createTestProject(projectName, projectPrefix, CREATED_BY_TLNGI, true, true, true, false,
-					true, true);
+			project = guard.call("createTestProject", false, () -> remoteApi.createTestProject(projectName,
+					projectPrefix, CREATED_BY_TLNGI, true, true, true, false, true, true));
 		}
+		metadataCache.put(cacheKey, project.getId(), project.getPrefix());
 
 		TestlinkProject result = new TestlinkProject(project);
 		result.setPlan(getPlan(project));
 		return result;
 	}
 
+	/**
+	 * Asynchronous variant of getProject.
+	 *
+	 * @param projectName the name of the TestLink project
+	 * @return the future project with its execution plan
+	 */
+	public CompletableFuture<TestlinkProject> getProjectAsync(String projectName) {
+		return CompletableFuture.supplyAsync(() -> getProject(projectName), executor);
+	}
+
+	/**
+	 * Resolves project, execution plan and build without blocking the caller.
+	 * Failures complete the future exceptionally.
+	 *
+	 * @param projectName the name of the TestLink project
+	 * @param buildName   the name of the build, usually the Maven version
+	 * @return the future project with plan and build
+	 */
+	public CompletableFuture<TestlinkProject> connectAsync(String projectName, String buildName) {
+		return getProjectAsync(projectName).thenCompose(project -> getBuildAsync(project.getPlan(), buildName)
+				.thenApply(build -> {
+					project.setBuild(build);
+					return project;
+				}));
+	}
+
 	/**
 	 * Provides an existing or newly created execution plan. There will be only one
 	 * execution plan with the constant name TestNGAutomation.
@@ -127,7 +315,7 @@ public class TestlinkIntegrationContext {
 		checkConnection();
 		TestPlan plan = null;
 		try {
-			TestPlan[] plans = remoteApi.getProjectTestPlans(project.getId());
+			TestPlan[] plans = guard.call("getProjectTestPlans", true, () -> remoteApi.getProjectTestPlans(project.getId()));
 			for (TestPlan existingPlan : plans) {
 				if (existingPlan.getName().startsWith(CONSTANT_NAME)
 						&& (plan == null || plan.getId() < existingPlan.getId())) {
@@ -137,6 +325,8 @@ public class TestlinkIntegrationContext {
 
 			if (null == plan) {
 				plan = createPlan(project);
+			} else {
+				metadataCache.put("plan." + project.getId(), plan.getId(), plan.getName());
 			}
 
 		} catch (TestLinkAPIException notFoundException) {
@@ -145,6 +335,37 @@ public class TestlinkIntegrationContext {
 		return plan;
 	}
 
+	/**
+	 * Provides the cached execution plan of a project. The cached ids are
+	 * validated by fetching the builds of the plan, which getBuild needs next
+	 * anyway.
+	 *
+	 * @param project the TestLink project for the plan
+	 * @return the execution plan or null if not cached or stale
+	 */
+	private TestPlan getCachedPlan(TestProject project) {
+		String[] cached = metadataCache.get("plan." + project.getId());
+		if (null == cached) {
+			return null;
+		}
+		TestPlan plan = new TestPlan();
+		plan.setId(Integer.valueOf(cached[0]));
+		plan.setName(cached[1]);
+		plan.setProjectName(project.getName());
+
+		try {
+			Build[] buildArray = guard.call("getBuildsForTestPlan", true,
+					() -> remoteApi.getBuildsForTestPlan(plan.getId()));
+			prefetchedBuilds.put(plan.getId(), null == buildArray ? new Build[0] : buildArray);
+			return plan;
+		} catch (TestlinkUnavailableException unavailableException) {
+			throw unavailableException;
+		} catch (TestLinkAPIException staleException) {
+			log.info("Cached TestLink plan " + plan.getName() + " is not valid anymore: " + staleException.getMessage());
+			return null;
+		}
+	}
+
 	/**
 	 * Create a new test plan for TestNG automation.
 	 *
@@ -152,9 +373,14 @@ public class TestlinkIntegrationContext {
 	 * @return the new TestPlan object
 	 */
 	protected TestPlan createPlan(TestProject project) {
+		// the plan gets replaced, so the indexed assignments are outdated
+		planIndex.clear();
 		LocalDateTime now = LocalDateTime.now();
-		return remoteApi.createTestPlan(CONSTANT_NAME + now.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
-				project.getName(), CREATED_BY_TLNGI, true, true);
+		TestPlan plan = guard.call("createTestPlan", false,
+				() -> remoteApi.createTestPlan(CONSTANT_NAME + now.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
+						project.getName(), CREATED_BY_TLNGI, true, true));
+		metadataCache.put("plan." + project.getId(), plan.getId(), plan.getName());
+		return plan;
 	}
 
 	/**
@@ -167,7 +393,11 @@ public class TestlinkIntegrationContext {
 	public Build getBuild(TestPlan plan, String buildName) {
 		checkConnection();
 		try {
-			Build[] buildArray = remoteApi.getBuildsForTestPlan(plan.getId());
+			Build[] buildArray = prefetchedBuilds.remove(plan.getId());
+			if (null == buildArray) {
+				buildArray = guard.call("getBuildsForTestPlan", true,
+						() -> remoteApi.getBuildsForTestPlan(plan.getId()));
+			}
 			if (null != buildArray) {
 				for (Build build : buildArray) {
 					if (build.getName().equals(buildName)) {
@@ -179,7 +409,18 @@ public class TestlinkIntegrationContext {
 			checkApiExceptionNotFound(notFoundException);
 		}
 
-		return remoteApi.createBuild(plan.getId(), buildName, CREATED_BY_TLNGI);
+		return guard.call("createBuild", false, () -> remoteApi.createBuild(plan.getId(), buildName, CREATED_BY_TLNGI));
+	}
+
+	/**
+	 * Asynchronous variant of getBuild.
+	 *
+	 * @param plan      the TestLink execution plan for the build
+	 * @param buildName the name for the new build, usually the Maven version
+	 * @return the future build
+	 */
+	public CompletableFuture<Build> getBuildAsync(TestPlan plan, String buildName) {
+		return CompletableFuture.supplyAsync(() -> getBuild(plan, buildName), executor);
 	}
 
 	/**
@@ -191,32 +432,94 @@ public class TestlinkIntegrationContext {
 	 */
 	public TestSuite getSuite(TestProject project, String suiteName) {
 		checkConnection();
+		String cacheKey = suiteCacheKey(project.getId(), suiteName);
+		String[] cached = metadataCache.get(cacheKey);
+		if (null != cached) {
+			TestSuite suite = new TestSuite();
+			suite.setId(Integer.valueOf(cached[0]));
+			suite.setName(suiteName);
+			suite.setTestProjectId(project.getId());
+			return suite;
+		}
+		return findOrCreateSuite(project.getId(), suiteName);
+	}
+
+	/**
+	 * Looks up a suite in TestLink, creates it if it does not exist and stores
+	 * its id in the metadata cache.
+	 *
+	 * @param projectId the TestLink project id
+	 * @param suiteName the name of the test suite
+	 * @return the TestLink test suite
+	 */
+	private TestSuite findOrCreateSuite(Integer projectId, String suiteName) {
+		String cacheKey = suiteCacheKey(projectId, suiteName);
 
 		// find existing suite
 		TestSuite[] suitesArray = null;
 		try {
-			suitesArray = remoteApi.getFirstLevelTestSuitesForTestProject(project.getId());
+			suitesArray = guard.call("getFirstLevelTestSuitesForTestProject", true,
+					() -> remoteApi.getFirstLevelTestSuitesForTestProject(projectId));
 		} catch (TestLinkAPIException notFoundException) {
 			checkApiExceptionNotFound(notFoundException);
 		}
 		if (null != suitesArray) {
 			for (TestSuite suite : suitesArray) {
 				if (suite.getName().equals(suiteName)) {
-					suite.setTestProjectId(project.getId());
+					suite.setTestProjectId(projectId);
+					metadataCache.put(cacheKey, suite.getId());
 					return suite;
 				}
 			}
 		}
 
 		// not found, create new
-		TestSuite suite = remoteApi.createTestSuite(project.getId(), suiteName, CREATED_BY_TLNGI, null, 0, true,
-				ActionOnDuplicate.BLOCK);
-		suite.setTestProjectId(project.getId());
+		TestSuite suite = guard.call("createTestSuite", false, () -> remoteApi.createTestSuite(projectId, suiteName,
+				CREATED_BY_TLNGI, null, 0, true, ActionOnDuplicate.BLOCK));
+		suite.setName(suiteName);
+		suite.setTestProjectId(projectId);
+		metadataCache.put(cacheKey, suite.getId());
 		return suite;
 	}
 
+	private String suiteCacheKey(Integer projectId, String suiteName) {
+		return "suite." + projectId + "." + suiteName;
+	}
+
+	/**
+	 * Resolves a suite again if its cached id turned out to be stale. The new id
+	 * is stored in the suite and the metadata cache, so all test cases of the
+	 * suite use it from now on. Of concurrent refreshes only the first one asks
+	 * TestLink.
+	 *
+	 * @param suite   the TestLink test suite
+	 * @param staleId the suite id the failed call was made with
+	 */
+	private void refreshSuite(TestSuite suite, Integer staleId) {
+		synchronized (suite) {
+			if (!staleId.equals(suite.getId())) {
+				return; // refreshed by another thread
+			}
+			log.info("TestLink suite " + suite.getName() + " with id " + staleId + " not found, resolving it again.");
+			suiteIndex.remove(staleId);
+			suite.setId(findOrCreateSuite(suite.getTestProjectId(), suite.getName()).getId());
+		}
+	}
+
+	/**
+	 * Asynchronous variant of getSuite.
+	 *
+	 * @param project   the TestLink project
+	 * @param suiteName the name of the test suite (usually from testng.xml)
+	 * @return the future TestLink test suite
+	 */
+	public CompletableFuture<TestSuite> getSuiteAsync(TestProject project, String suiteName) {
+		return CompletableFuture.supplyAsync(() -> getSuite(project, suiteName), executor);
+	}
+
 	/**
-	 * Fetches all TestLink test cases for plan/build combination.
+	 * Fetches all TestLink test cases for plan/build combination. The result
+	 * (re)initializes the plan index used by addTestCaseToPlan.
 	 *
 	 * @param plan  the execution plan
 	 * @param build the build, usually the Maven version
@@ -225,20 +528,61 @@ public class TestlinkIntegrationContext {
 	public List<TestCase> getTestCases(TestPlan plan, Build build) {
 		checkConnection();
 
+		List<TestCase> testCases = new ArrayList<>();
 		try {
-			TestCase[] casesArray = remoteApi.getTestCasesForTestPlan(plan.getId(), null, build.getId(), null, null,
-					null, null, null, null, true, null);
+			TestCase[] casesArray = guard.call("getTestCasesForTestPlan", true,
+					() -> remoteApi.getTestCasesForTestPlan(plan.getId(), null, build.getId(), null, null, null, null,
+							null, null, true, null));
 			if (null != casesArray) {
-				return Arrays.asList(casesArray);
+				testCases = Arrays.asList(casesArray);
 			}
 		} catch (TestLinkAPIException notFoundException) {
 			checkApiExceptionNotFound(notFoundException);
 		}
-		return new ArrayList<>();
+
+		Map<Integer, Integer> index = new ConcurrentHashMap<>();
+		testCases.forEach(tc -> index.merge(tc.getId(), tc.getVersion(), Math::max));
+		planIndex.put(planIndexKey(plan, build), index);
+		return testCases;
+	}
+
+	/**
+	 * Asynchronous variant of getTestCases.
+	 *
+	 * @param plan  the execution plan
+	 * @param build the build, usually the Maven version
+	 * @return the future list of TestCase objects from TestLink
+	 */
+	public CompletableFuture<List<TestCase>> getTestCasesAsync(TestPlan plan, Build build) {
+		return CompletableFuture.supplyAsync(() -> getTestCases(plan, build), executor);
+	}
+
+	/**
+	 * Provides the indexed test case versions of a plan/build combination. The
+	 * index is fetched from TestLink only once.
+	 *
+	 * @param plan  the execution plan
+	 * @param build the build
+	 * @return test case id to assigned version
+	 */
+	private Map<Integer, Integer> getPlanIndex(TestPlan plan, Build build) {
+		String key = planIndexKey(plan, build);
+		Map<Integer, Integer> index = planIndex.get(key);
+		if (null == index) {
+			getTestCases(plan, build);
+			index = planIndex.get(key);
+		}
+		return index;
+	}
+
+	private String planIndexKey(TestPlan plan, Build build) {
+		return plan.getId() + ":" + build.getId();
 	}
 
 	/**
-	 * Creates a new TestLink test case.
+	 * Creates a new TestLink test case. If the suite does not exist anymore,
+	 * e.g. because its id came from an outdated metadata cache, the suite is
+	 * resolved again and the creation is repeated once.
 	 *
 	 * @param caseName the name of the test case
 	 * @param suite    the TestLink test suite
@@ -247,25 +591,143 @@ public class TestlinkIntegrationContext {
 	 * @return the new TestLink testcase
 	 */
 	public TestCase createTestCase(String caseName, TestSuite suite, TestProject project, List<TestCaseStep> steps) {
+		Integer suiteId = suite.getId();
+		try {
+			return createTestCase(caseName, suite, steps);
+		} catch (TestLinkAPIException createException) {
+			if (createException instanceof TestlinkUnavailableException || null == createException.getMessage()
+					|| !createException.getMessage().contains(EXIST)) {
+				throw createException;
+			}
+			// the suite id may come from an outdated metadata cache, resolve it and try once more
+			refreshSuite(suite, suiteId);
+			return createTestCase(caseName, suite, steps);
+		}
+	}
 
-		TestCase testCase = null;
+	private TestCase createTestCase(String caseName, TestSuite suite, List<TestCaseStep> steps) {
 
-		try {
-			Integer id = remoteApi.getTestCaseIDByName(caseName, suite.getName(), project.getName(), null);
-			testCase = remoteApi.getTestCase(id, null, null);
+		// unchanged steps since the last run - no lookup needed
+		String cacheKey = testCaseCacheKey(caseName, suite);
+		String fingerprint = TestlinkMetadataCache.fingerprint(steps);
+		String[] cached = metadataCache.get(cacheKey);
+		if (null != cached && fingerprint.equals(cached[2])) {
+			TestCase testCase = new TestCase();
+			testCase.setId(Integer.valueOf(cached[0]));
+			testCase.setVersion(Integer.valueOf(cached[1]));
+			testCase.setName(caseName);
+			return testCase;
+		}
+
+		Map<String, TestCase> suiteCases = getSuiteIndex(suite);
+		TestCase testCase = suiteCases.get(caseName);
+		if (null != testCase) {
+			if (null == testCase.getSteps() || null == testCase.getVersion()) {
+				// bulk result without details
+				Integer id = testCase.getId();
+				testCase = guard.call("getTestCase", true, () -> remoteApi.getTestCase(id, null, null));
+			}
 			if (compareSteps(steps, testCase.getSteps())) {
+				metadataCache.put(cacheKey, testCase.getId(), testCase.getVersion(), fingerprint);
 				return testCase;
 			}
+		}
+
+		Integer id = guard.call("createTestCase", false,
+				() -> remoteApi.createTestCase(caseName, suite.getId(), suite.getTestProjectId(), automationUser,
+						CREATED_BY_TLNGI, steps, null, TestCaseStatus.FINAL, TestImportance.MEDIUM,
+						ExecutionType.AUTOMATED, null, null, true, ActionOnDuplicate.CREATE_NEW_VERSION))
+				.getId();
+
+		// read newly created testcase to populate all fields
+		testCase = guard.call("getTestCase", true, () -> remoteApi.getTestCase(id, null, null));
+		suiteCases.put(caseName, testCase);
+		metadataCache.put(cacheKey, testCase.getId(), testCase.getVersion(), fingerprint);
+		return testCase;
+	}
+
+	/**
+	 * Asynchronous variant of createTestCase.
+	 *
+	 * @param caseName the name of the test case
+	 * @param suite    the TestLink test suite
+	 * @param project  the TestLink project
+	 * @param steps    the list of test steps
+	 * @return the future TestLink testcase
+	 */
+	public CompletableFuture<TestCase> createTestCaseAsync(String caseName, TestSuite suite, TestProject project,
+			List<TestCaseStep> steps) {
+		return CompletableFuture.supplyAsync(() -> createTestCase(caseName, suite, project, steps), executor);
+	}
+
+	/**
+	 * Provides all test cases of a suite by name, including their steps. The
+	 * test cases are fetched from TestLink in one call outside of the index
+	 * map, so the map is not blocked meanwhile. Of concurrent loads of a suite
+	 * the first one stored wins.
+	 *
+	 * @param suite the TestLink test suite
+	 * @return test case name to latest version of the test case
+	 */
+	private Map<String, TestCase> getSuiteIndex(TestSuite suite) {
+		checkConnection();
+		Map<String, TestCase> index = suiteIndex.get(suite.getId());
+		if (null != index) {
+			return index;
+		}
+
+		Map<String, TestCase> loadedIndex = new ConcurrentHashMap<>();
+		try {
+			TestCase[] casesArray = guard.call("getTestCasesForTestSuite", true,
+					() -> remoteApi.getTestCasesForTestSuite(suite.getId(), false, TestCaseDetails.FULL));
+			if (null != casesArray) {
+				for (TestCase tc : casesArray) {
+					loadedIndex.merge(tc.getName(), tc, (existing, other) -> null == existing.getVersion()
+							|| null != other.getVersion() && other.getVersion() > existing.getVersion() ? other
+									: existing);
+				}
+			}
 		} catch (TestLinkAPIException notFoundException) {
 			checkApiExceptionNotFound(notFoundException);
 		}
+		log.debug(new StringBuilder("Preloaded ").append(loadedIndex.size()).append(" test cases of suite ")
+				.append(suite.getName()));
+		index = suiteIndex.putIfAbsent(suite.getId(), loadedIndex);
+		return null == index ? loadedIndex : index;
+	}
+
+	/**
+	 * Removes a test case from the metadata cache and the suite index, e.g. if
+	 * its cached id turned out to be stale. Other test cases of the suite stay
+	 * indexed.
+	 *
+	 * @param caseName the name of the test case
+	 * @param suite    the TestLink test suite
+	 */
+	public void invalidateTestCase(String caseName, TestSuite suite) {
+		metadataCache.remove(testCaseCacheKey(caseName, suite));
+		Map<String, TestCase> suiteCases = suiteIndex.get(suite.getId());
+		if (null != suiteCases) {
+			suiteCases.remove(caseName);
+		}
+	}
+
+	/**
+	 * Removes all entries from the metadata cache.
+	 *
+	 * @return true if any entries were cached
+	 */
+	public boolean invalidateCache() {
+		return metadataCache.clear();
+	}
 
-		testCase = remoteApi.createTestCase(caseName, suite.getId(), suite.getTestProjectId(), automationUser,
-				CREATED_BY_TLNGI, steps, null, TestCaseStatus.FINAL, TestImportance.MEDIUM, ExecutionType.AUTOMATED,
-				null, null, true, ActionOnDuplicate.CREATE_NEW_VERSION);
+	/** Writes the metadata cache to disk for the next run. */
+	public void saveCache() {
+		metadataCache.save();
+	}
 
-		// read newly created testcase to populate all fields
-		return remoteApi.getTestCase(testCase.getId(), null, null);
+	private String testCaseCacheKey(String caseName, TestSuite suite) {
+		return "case." + suite.getId() + "." + caseName;
 	}
 
 	/**
@@ -275,7 +737,7 @@ public class TestlinkIntegrationContext {
 	 * @param existingSteps list of previously created steps
 	 * @return true if both lists contain the same steps.
 	 */
-	private boolean compareSteps(List<TestCaseStep> steps, List<TestCaseStep> existingSteps) {
+	static boolean compareSteps(List<TestCaseStep> steps, List<TestCaseStep> existingSteps) {
 		if (existingSteps.size() != steps.size()) {
 			return false;
 		}
@@ -292,7 +754,8 @@ public class TestlinkIntegrationContext {
 	}
 
 	/**
-	 * Adds a test case to an execution plan in TestLink.
+	 * Adds a test case to an execution plan in TestLink. A new version of an
+	 * assigned test case replaces the assigned version.
 	 *
 	 * @param testCase the TestLink test case
 	 * @param plan     the TestLink execution plan
@@ -300,16 +763,86 @@ public class TestlinkIntegrationContext {
 	 * @param project  the TestLink project
 	 */
 	public void addTestCaseToPlan(TestCase testCase, TestPlan plan, Build build, TestProject project) {
+		checkConnection();
+		Map<Integer, Integer> index = getPlanIndex(plan, build);
+		Integer assignedVersion = index.get(testCase.getId());
+		if (null != assignedVersion && testCase.getVersion() <= assignedVersion) {
+			return;
+		}
 
-		List<TestCase> testCases = getTestCases(plan, build);
-		for (TestCase tc : testCases) {
-			if (testCase.getId().equals(tc.getId()) && testCase.getVersion() <= tc.getVersion()) {
-				return;
-			}
+		Map<String, Object> assignmentData = assignmentData(testCase, plan, project, null != assignedVersion);
+		try {
+			guard.call("addTestCaseToTestPlan", false, () -> remoteApi
+					.executeXmlRpcCall(TestLinkMethods.ADD_TEST_CASE_TO_TEST_PLAN.toString(), assignmentData));
+		} catch (XmlRpcException xmlrpcex) {
+			throw new TestLinkAPIException("Error adding TC to plan: " + xmlrpcex.getMessage(), xmlrpcex);
 		}
+		index.merge(testCase.getId(), testCase.getVersion(), Math::max);
+	}
+
+	/**
+	 * Adds a test case to an execution plan in TestLink. The call is batched
+	 * with others if batching is enabled. A new version of an assigned test case
+	 * replaces the assigned version.
+	 *
+	 * @param testCase the TestLink test case
+	 * @param plan     the TestLink execution plan
+	 * @param build    the TestLink build
+	 * @param project  the TestLink project
+	 * @return completed when the test case is part of the plan
+	 */
+	public CompletableFuture<Void> addTestCaseToPlanAsync(TestCase testCase, TestPlan plan, Build build,
+			TestProject project) {
+		return connected().thenCompose(connected -> {
+			if (null == batcher) {
+				return CompletableFuture.runAsync(() -> addTestCaseToPlan(testCase, plan, build, project), executor);
+			}
+			return addTestCaseToPlanBatched(testCase, plan, build, project);
+		});
+	}
+
+	private CompletableFuture<Void> addTestCaseToPlanBatched(TestCase testCase, TestPlan plan, Build build,
+			TestProject project) {
+
+		// the plan index is loaded on the executor if this is the first assignment
+		Map<Integer, Integer> loadedIndex = planIndex.get(planIndexKey(plan, build));
+		CompletableFuture<Map<Integer, Integer>> planIndexFuture = null != loadedIndex
+				? CompletableFuture.completedFuture(loadedIndex)
+				: CompletableFuture.supplyAsync(() -> getPlanIndex(plan, build), executor);
+		return planIndexFuture.thenCompose(index -> {
+			Integer assignedVersion = index.get(testCase.getId());
+			if (null != assignedVersion && testCase.getVersion() <= assignedVersion) {
+				return CompletableFuture.completedFuture(null);
+			}
 
-		remoteApi.addTestCaseToTestPlan(project.getId(), plan.getId(), testCase.getId(), testCase.getVersion(), null,
-				null, null);
+			Map<String, Object> assignmentData = assignmentData(testCase, plan, project, null != assignedVersion);
+			assignmentData.put(TestLinkParams.DEV_KEY.toString(), apiKey);
+			return batcher.submit(TestLinkMethods.ADD_TEST_CASE_TO_TEST_PLAN.toString(), assignmentData)
+					.thenAccept(response -> {
+						checkResponseError(response);
+						index.merge(testCase.getId(), testCase.getVersion(), Math::max);
+					});
+		});
+	}
+
+	/**
+	 * Provides the parameters of addTestCaseToTestPlan.
+	 *
+	 * @param testCase  the TestLink test case
+	 * @param plan      the TestLink execution plan
+	 * @param project   the TestLink project
+	 * @param overwrite true to replace the assigned version of the test case
+	 * @return the parameters
+	 */
+	private Map<String, Object> assignmentData(TestCase testCase, TestPlan plan, TestProject project,
+			boolean overwrite) {
+		Map<String, Object> assignmentData = new HashMap<>();
+		assignmentData.put(TestLinkParams.TEST_PROJECT_ID.toString(), project.getId());
+		assignmentData.put(TestLinkParams.TEST_PLAN_ID.toString(), plan.getId());
+		assignmentData.put(TestLinkParams.TEST_CASE_ID.toString(), testCase.getId());
+		assignmentData.put(TestLinkParams.VERSION.toString(), testCase.getVersion());
+		assignmentData.put(TestLinkParams.OVERWRITE.toString(), overwrite);
+		return assignmentData;
 	}
 
 	/**
@@ -319,19 +852,64 @@ public class TestlinkIntegrationContext {
 	 * @param attachment  the file attachment
 	 */
 	public void saveAttachment(Integer executionId, AttachmentPart attachment) {
+		saveAttachment(executionId, TestlinkAttachment.of(attachment));
+	}
+
+	/**
+	 * Saves file attachment to existing test execution. The content is base64
+	 * encoded while it is streamed into the request. If the transport buffers
+	 * requests, concurrent uploads are limited by the attachment heap budget.
+	 * Attachments larger than the configured maximum size are skipped.
+	 *
+	 * @param executionId identifier for existing test execution
+	 * @param attachment  the file attachment
+	 */
+	public void saveAttachment(Integer executionId, TestlinkAttachment attachment) {
+		checkConnection();
+		long size = attachment.getSize();
+		if (size > maxAttachmentSize) {
+			log.warn(new StringBuilder("Attachment ").append(attachment.getTitle()).append(" skipped, size ")
+					.append(size).append(" exceeds ").append(maxAttachmentSize));
+			return;
+		}
+
+		// a buffered request holds the base64 content, which needs 4/3 of the size
+		int budget = transport.isStreaming() ? 0
+				: (int) Math.min(attachmentHeapBudgetKb, size < 0 ? attachmentHeapBudgetKb : size * 4 / 3 / KB + 1);
+		attachmentHeapBudget.acquireUninterruptibly(budget);
 		try {
-			String content = new BufferedReader(new InputStreamReader(attachment.getBase64Content())).lines()
-					.collect(Collectors.joining("\n"));
-			remoteApi.uploadExecutionAttachment(executionId,
-					attachment.getContentId() == null ? attachment.toString() : attachment.getContentId(),
-					CREATED_BY_TLNGI,
-					attachment.getContentLocation() == null ? attachment.toString() : attachment.getContentLocation(),
-					attachment.getContentType(), content);
-		} catch (SOAPException transferException) {
-			log.error("Could not save attachment.", transferException);
+			Map<String, Object> attachmentData = new HashMap<>();
+			attachmentData.put(TestLinkParams.DEV_KEY.toString(), apiKey);
+			attachmentData.put(TestLinkParams.EXECUTION_ID.toString(), executionId);
+			attachmentData.put(TestLinkParams.TITLE.toString(), attachment.getTitle());
+			attachmentData.put(TestLinkParams.DESCRIPTION.toString(), CREATED_BY_TLNGI);
+			attachmentData.put(TestLinkParams.FILE_NAME.toString(), attachment.getFileName());
+			attachmentData.put(TestLinkParams.FILE_TYPE.toString(), attachment.getContentType());
+			attachmentData.put(TestLinkParams.CONTENT.toString(), attachment);
+			List<Object> params = Collections.singletonList(attachmentData);
+			Object response = guard.call("uploadExecutionAttachment", false,
+					() -> rpcClient.execute(TestLinkMethods.UPLOAD_EXECUTION_ATTACHMENT.toString(), params));
+			checkResponseError(response);
+			metrics.recordAttachment(size);
+		} catch (XmlRpcException | TestlinkUnavailableException xmlrpcex) {
+			log.error("Could not save attachment.", xmlrpcex);
+		} finally {
+			attachmentHeapBudget.release(budget);
 		}
 	}
 
+	/**
+	 * Asynchronous variant of saveAttachment. Uploads wait for the attachment
+	 * heap budget on the executor, not in the caller.
+	 *
+	 * @param executionId identifier for existing test execution
+	 * @param attachment  the file attachment
+	 * @return completed when the attachment is saved or skipped
+	 */
+	public CompletableFuture<Void> saveAttachmentAsync(Integer executionId, TestlinkAttachment attachment) {
+		return CompletableFuture.runAsync(() -> saveAttachment(executionId, attachment), executor);
+	}
+
 	/**
 	 * Wraps reportTestCaseResult and returns just the execution id.
 	 *
@@ -352,6 +930,37 @@ public class TestlinkIntegrationContext {
 		return result == null ? null : result.getExecutionId();
 	}
 
+	/**
+	 * Asynchronous variant of setTestResult. The report is batched with others
+	 * if batching is enabled.
+	 *
+	 * @param testCase    the TestLink test case
+	 * @param plan        the TestLink execution plan
+	 * @param build       the TestLink build
+	 * @param status      the ExecutionStatus (passed, failed etc.)
+	 * @param notes       the test execution protocol
+	 * @param stepResults the detailed results of each test step
+	 * @return the future execution id (for additional uploads)
+	 */
+	public CompletableFuture<Integer> setTestResultAsync(TestCase testCase, TestPlan plan, Build build,
+			ExecutionStatus status, String notes, List<Map<String, Object>> stepResults) {
+		return connected().thenCompose(connected -> {
+			if (null == batcher) {
+				return CompletableFuture.supplyAsync(
+						() -> setTestResult(testCase, plan, build, status, notes, stepResults), executor);
+			}
+
+			Map<String, Object> executionData = executionData(testCase.getId(), plan.getId(), status,
+					build.getId(), notes, stepResults);
+			executionData.put(TestLinkParams.DEV_KEY.toString(), apiKey);
+			return batcher.submit(TestLinkMethods.REPORT_TC_RESULT.toString(), executionData).thenApply(response -> {
+				checkResponseError(response);
+				ReportTCResultResponse result = toReportTCResultResponse(response);
+				return result == null ? null : result.getExecutionId();
+			});
+		});
+	}
+
 	/**
 	 * Saves test case execution result and protocol to TestLink.
 	 *
@@ -365,51 +974,94 @@ public class TestlinkIntegrationContext {
 	 */
 	private ReportTCResultResponse reportTestCaseResult(Integer testCaseId, Integer testPlanId, ExecutionStatus status,
 			Integer buildId, String notes, List<Map<String, Object>> steps) {
-		ReportTCResultResponse reportTestCaseResultResponse = null;
-
+		checkConnection();
 		try {
-			Map<String, Object> executionData = new HashMap<>();
-			executionData.put(TestLinkParams.TEST_CASE_ID.toString(), testCaseId);
-			executionData.put(TestLinkParams.TEST_CASE_EXTERNAL_ID.toString(), null);
-			executionData.put(TestLinkParams.TEST_PLAN_ID.toString(), testPlanId);
-			executionData.put(TestLinkParams.STATUS.toString(), status.toString());
-			executionData.put(TestLinkParams.BUILD_ID.toString(), buildId);
-			executionData.put(TestLinkParams.BUILD_NAME.toString(), null);
-			executionData.put(TestLinkParams.NOTES.toString(), notes);
-			executionData.put(TestLinkParams.GUESS.toString(), true);
-			executionData.put(TestLinkParams.BUG_ID.toString(), null);
-			executionData.put(TestLinkParams.PLATFORM_ID.toString(), null);
-			executionData.put(TestLinkParams.PLATFORM_NAME.toString(), null);
-			executionData.put(TestLinkParams.CUSTOM_FIELDS.toString(), null);
-			executionData.put(TestLinkParams.OVERWRITE.toString(), false);
-			executionData.put(TestLinkParams.STEPS.toString(), steps);
-			Object response = remoteApi.executeXmlRpcCall(TestLinkMethods.REPORT_TC_RESULT.toString(), executionData);
+			Map<String, Object> executionData = executionData(testCaseId, testPlanId, status, buildId, notes, steps);
+			Object response = guard.call("reportTCResult", false,
+					() -> remoteApi.executeXmlRpcCall(TestLinkMethods.REPORT_TC_RESULT.toString(), executionData));
 			// the error verification routine is called inside
 			// super.executeXml...
-			if (response instanceof Object[]) {
-				Object[] responseArray = Util.castToArray(response);
-				@SuppressWarnings("unchecked")
-				Map<String, Object> responseMap = (Map<String, Object>) responseArray[0];
-
-				reportTestCaseResultResponse = Util.getReportTCResultResponse(responseMap);
-			}
+			return toReportTCResultResponse(response);
 		} catch (XmlRpcException xmlrpcex) {
 			throw new TestLinkAPIException("Error reporting TC result: " + xmlrpcex.getMessage(), xmlrpcex);
 		}
+	}
 
-		return reportTestCaseResultResponse;
+	private Map<String, Object> executionData(Integer testCaseId, Integer testPlanId, ExecutionStatus status,
+			Integer buildId, String notes, List<Map<String, Object>> steps) {
+		Map<String, Object> executionData = new HashMap<>();
+		executionData.put(TestLinkParams.TEST_CASE_ID.toString(), testCaseId);
+		executionData.put(TestLinkParams.TEST_CASE_EXTERNAL_ID.toString(), null);
+		executionData.put(TestLinkParams.TEST_PLAN_ID.toString(), testPlanId);
+		executionData.put(TestLinkParams.STATUS.toString(), status.toString());
+		executionData.put(TestLinkParams.BUILD_ID.toString(), buildId);
+		executionData.put(TestLinkParams.BUILD_NAME.toString(), null);
+		executionData.put(TestLinkParams.NOTES.toString(), notes);
+		executionData.put(TestLinkParams.GUESS.toString(), true);
+		executionData.put(TestLinkParams.BUG_ID.toString(), null);
+		executionData.put(TestLinkParams.PLATFORM_ID.toString(), null);
+		executionData.put(TestLinkParams.PLATFORM_NAME.toString(), null);
+		executionData.put(TestLinkParams.CUSTOM_FIELDS.toString(), null);
+		executionData.put(TestLinkParams.OVERWRITE.toString(), overwrite);
+		executionData.put(TestLinkParams.STEPS.toString(), steps);
+		return executionData;
+	}
+
+	private ReportTCResultResponse toReportTCResultResponse(Object response) {
+		if (response instanceof Object[]) {
+			Object[] responseArray = Util.castToArray(response);
+			@SuppressWarnings("unchecked")
+			Map<String, Object> responseMap = (Map<String, Object>) responseArray[0];
+
+			return Util.getReportTCResultResponse(responseMap);
+		}
+		return null;
 	}
 
 	/**
-	 * Checks connection to avoid strange NullPointerExceptions. Throws
-	 * TestLinkAPIException if no connection is established.
+	 * Waits for the background connection attempt.
+	 *
+	 * @throws TestLinkAPIException if there is no connection
 	 */
 	private void checkConnection() {
+		try {
+			connection.join();
+		} catch (CompletionException connectException) {
+			throw new TestLinkAPIException("No TestLink connection.", connectException.getCause());
+		}
 		if (null == remoteApi) {
 			throw new TestLinkAPIException("No TestLink connection.");
 		}
 	}
 
+	/**
+	 * Provides the connection attempt for composition with asynchronous calls.
+	 *
+	 * @return completed when connected, exceptionally if there is no connection
+	 */
+	private CompletableFuture<Void> connected() {
+		return connection.thenRun(this::checkConnection);
+	}
+
+	/**
+	 * Checks a raw XML-RPC response for TestLink error structures, as done by
+	 * the TestLink API for its own calls.
+	 *
+	 * @param response the XML-RPC response
+	 */
+	private void checkResponseError(Object response) {
+		if (response instanceof Object[]) {
+			for (Object responseEntry : (Object[]) response) {
+				if (responseEntry instanceof Map<?, ?>) {
+					Map<?, ?> responseMap = (Map<?, ?>) responseEntry;
+					if (responseMap.containsKey("code") && responseMap.containsKey("message")) {
+						throw new TestLinkAPIException(responseMap.get("code") + ": " + responseMap.get("message"));
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * Workaround to identify "... does not exist|no ... exists" exception from
 	 * other TestLink API exceptions.
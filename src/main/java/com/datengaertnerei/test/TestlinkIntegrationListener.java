@@ -1,16 +1,24 @@
 package com.datengaertnerei.test;
 
-import java.time.Duration;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 
-import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.testng.IClassListener;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.ITestClass;
 import org.testng.ITestContext;
 import org.testng.ITestListener;
 import org.testng.ITestResult;
@@ -18,19 +26,27 @@ import org.testng.ITestResult;
 import com.datengaertnerei.test.TestlinkStep.TestStatus;
 
 import br.eti.kinoshita.testlinkjavaapi.constants.ExecutionStatus;
-import br.eti.kinoshita.testlinkjavaapi.constants.ExecutionType;
-import br.eti.kinoshita.testlinkjavaapi.model.TestCase;
-import br.eti.kinoshita.testlinkjavaapi.model.TestCaseStep;
 import br.eti.kinoshita.testlinkjavaapi.model.TestSuite;
-import jakarta.xml.soap.AttachmentPart;
+import br.eti.kinoshita.testlinkjavaapi.util.TestLinkAPIException;
 
-public class TestlinkIntegrationListener implements ITestListener {
+public class TestlinkIntegrationListener implements ISuiteListener, ITestListener, IClassListener {
 	private static Log log = LogFactory.getLog(TestlinkIntegrationListener.class);
 
 	private TestlinkIntegrationContext tlContext;
 	private TestlinkProject tlProject;
 	private Map<String, TestlinkCase> testCases;
-	private Map<String, AttachmentPart> attachments;
+	private Map<String, Set<String>> caseNamesByClass;
+	private TestlinkStackTraces stackTraces;
+	private volatile TestlinkUploader uploader;
+	private TestlinkJournal journal;
+	/** Attachment processor of the run, null if attachments are uploaded as they are. */
+	private TestlinkAttachmentProcessor attachmentProcessor;
+	/** Project with plan and build, resolved in the background. */
+	private CompletableFuture<TestlinkProject> connection;
+	/** Uploader of the incremental mode, created once the connection is ready. */
+	private CompletableFuture<TestlinkUploader> incrementalUploader;
+	/** True while a run for the whole suite is active. */
+	private boolean suiteLevel;
 
 	@Override
 	public void onTestStart(ITestResult result) {
@@ -39,188 +55,393 @@ public class TestlinkIntegrationListener implements ITestListener {
 
 	@Override
 	public void onTestSuccess(ITestResult result) {
-		if (tlProject == null) {
+		if (!isRecording()) {
 			return;
 		}
 		TestlinkStep step = createTestStep(result);
 		step.setStatus(TestStatus.PASSED);
 		testCases.computeIfAbsent(result.getInstanceName(), t -> new TestlinkCase(result.getInstanceName()))
-				.setStatus(ExecutionStatus.PASSED);
+				.updateStatus(ExecutionStatus.PASSED);
+		journalStep(result, step);
 
 		transferAttachments(result);
 	}
 
 	@Override
 	public void onTestFailure(ITestResult result) {
-		if (tlProject == null) {
+		if (!isRecording()) {
 			return;
 		}
 		TestlinkStep step = createTestStep(result);
 		step.setStatus(TestStatus.FAILED);
-		step.setStackTrace(ExceptionUtils.getStackTrace(result.getThrowable()));
+		step.setFailure(stackTraces.of(result.getThrowable()));
 		testCases.computeIfAbsent(result.getInstanceName(), t -> new TestlinkCase(result.getInstanceName()))
-				.setStatus(ExecutionStatus.FAILED);
+				.updateStatus(ExecutionStatus.FAILED);
+		journalStep(result, step);
 
 		transferAttachments(result);
 	}
 
 	private void transferAttachments(ITestResult result) {
+		List<TestlinkAttachment> attachmentList = new ArrayList<>();
 		if (result.getInstance() instanceof ContainsAttachmentsTestCase) {
 			ContainsAttachmentsTestCase attachmentContainer = (ContainsAttachmentsTestCase) result.getInstance();
-			List<AttachmentPart> attachmentList = attachmentContainer
-					.getAttachments(result.getMethod().getMethodName());
+			attachmentContainer.getAttachments(result.getMethod().getMethodName())
+					.forEach(attachment -> attachmentList.add(TestlinkAttachment.of(attachment)));
+		}
+		if (result.getInstance() instanceof ContainsFileAttachmentsTestCase) {
+			ContainsFileAttachmentsTestCase attachmentContainer = (ContainsFileAttachmentsTestCase) result
+					.getInstance();
+			attachmentList.addAll(attachmentContainer.getFileAttachments(result.getMethod().getMethodName()));
+		}
+
+		// attachments belong to the test case and method they come from
+		String testMethod = result.getMethod().getMethodName();
+		TestlinkCase testCase = testCases.get(result.getInstanceName());
+		attachmentList.forEach(attachment -> testCase.addAttachment(testMethod, attachment));
+		if (null != journal) {
 			attachmentList
-					.forEach(attachment -> attachments.put(attachment.getContentId() == null ? attachment.toString() // workaround
-																														// if
-																														// not
-																														// content
-																														// id
-																														// is
-																														// given
-							: attachment.getContentId(), attachment));
+					.forEach(attachment -> journal.attachment(result.getInstanceName(), testMethod, attachment));
+		}
+	}
+
+	private void journalStep(ITestResult result, TestlinkStep step) {
+		if (null == journal) {
+			return;
+		}
+		TestlinkCase testCase = testCases.get(result.getInstanceName());
+		journal.step(result.getInstanceName(), step);
+		journal.duration(result.getInstanceName(), result.getEndMillis() - result.getStartMillis());
+		if (null != testCase.getStatus()) {
+			journal.status(result.getInstanceName(), testCase.getStatus());
 		}
 	}
 
+	/**
+	 * Results are collected if there is a TestLink connection or a journal.
+	 *
+	 * @return true if results are collected
+	 */
+	private boolean isRecording() {
+		return null != tlProject || null != connection || null != journal;
+	}
+
 	@Override
 	public void onTestSkipped(ITestResult result) {
-		if (tlProject == null) {
+		if (!isRecording()) {
 			return;
 		}
 		TestlinkStep step = createTestStep(result);
 		step.setStatus(TestStatus.BLOCKED);
+		journalStep(result, step);
 	}
 
 	@Override
 	public void onTestFailedButWithinSuccessPercentage(ITestResult result) {
-		if (tlProject == null) {
+		if (!isRecording()) {
 			return;
 		}
 		TestlinkStep step = createTestStep(result);
 		step.setStatus(TestStatus.FAILED);
-		step.setStackTrace(ExceptionUtils.getStackTrace(result.getThrowable()));
+		step.setFailure(stackTraces.of(result.getThrowable()));
 		testCases.computeIfAbsent(result.getInstanceName(), t -> new TestlinkCase(result.getInstanceName()))
-				.setStatus(ExecutionStatus.PASSED);
+				.updateStatus(ExecutionStatus.PASSED);
+		journalStep(result, step);
 
 		transferAttachments(result);
 	}
 
+	@Override
+	public void onStart(ISuite suite) {
+		long start = System.nanoTime();
+		suiteLevel = true;
+		try {
+			start(suite.getName());
+		} finally {
+			recordTiming("onSuiteStart", start);
+		}
+	}
+
+	@Override
+	public void onFinish(ISuite suite) {
+		long start = System.nanoTime();
+		try {
+			finish(suite.getName());
+		} finally {
+			suiteLevel = false;
+			recordTiming("onSuiteFinish", start);
+			reportMetrics(suite.getName());
+		}
+	}
+
+	/**
+	 * Starts a run for the test context, unless a run has been started for the
+	 * whole suite already. All test contexts of a suite share the suite run.
+	 */
 	@Override
 	public void onStart(ITestContext context) {
+		if (suiteLevel) {
+			log.info(new StringBuilder("TestlinkIntegrationListener collecting Context ").append(context.getName())
+					.append(" of TestSuite ").append(context.getSuite().getName()));
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			start(context.getSuite().getName());
+		} finally {
+			recordTiming("onStart", start);
+		}
+	}
+
+	/**
+	 * Starts collecting results. Project, plan and build are resolved in the
+	 * background while the tests run.
+	 *
+	 * @param suiteName the test suite name
+	 */
+	private void start(String suiteName) {
 		String buildName = System.getProperty("TestlinkIntegrationListener.Build");
 		String projectName = System.getProperty("TestlinkIntegrationListener.Project");
+		String journalFile = System.getProperty("TestlinkIntegrationListener.Journal");
 
+		tlProject = null;
+		connection = null;
+		incrementalUploader = null;
 		if (null == projectName || null == buildName) {
 			log.error("Project/Build property missing. Could not synchronize to TestLink.");
 			return;
 		}
 
-		// init TestLink context and project
-		tlContext = TestlinkIntegrationContext.getInstance();
-		tlProject = tlContext.getProject(projectName);
-		tlProject.setBuild(tlContext.getBuild(tlProject.getPlan(), buildName));
-
 		testCases = new ConcurrentHashMap<>();
-		attachments = new ConcurrentHashMap<>();
+		caseNamesByClass = new ConcurrentHashMap<>();
+		stackTraces = TestlinkStackTraces.fromSystemProperties();
+		attachmentProcessor = TestlinkAttachmentPolicy.fromSystemProperties();
+		uploader = null;
+
+		if (null != journalFile) {
+			try {
+				journal = new TestlinkJournal(Paths.get(journalFile));
+				journal.run(projectName, buildName, suiteName);
+			} catch (IOException journalException) {
+				log.error("Cannot open journal " + journalFile, journalException);
+			}
+		}
+
+		// offline mode only records the journal for a later replay
+		if (null == journal || !Boolean.getBoolean("TestlinkIntegrationListener.Offline")) {
+			// init TestLink context, project, plan and build resolve in the background
+			tlContext = TestlinkIntegrationContext.getInstance();
+			connection = tlContext.connectAsync(projectName, buildName);
+
+			// incremental mode streams each test class to TestLink as soon as the connection is ready
+			if (Boolean.getBoolean("TestlinkIntegrationListener.Incremental")) {
+				incrementalUploader = connection
+						.thenCompose(project -> tlContext.getSuiteAsync(project.getProject(), suiteName)
+								.thenApplyAsync(suite -> new TestlinkUploader(tlContext, project, suite, true, journal,
+										attachmentProcessor), tlContext.getExecutor()));
+				incrementalUploader.thenAccept(readyUploader -> uploader = readyUploader);
+			}
+		}
 
-		log.info(new StringBuilder("TestlinkIntegrationListener starting for TestSuite ")
-				.append(context.getSuite().getName()).append(" and Context ").append(context.getName()));
+		log.info(new StringBuilder("TestlinkIntegrationListener starting for TestSuite ").append(suiteName));
 	}
 
 	@Override
 	public void onFinish(ITestContext context) {
-		if (tlProject == null) {
+		if (suiteLevel) {
 			return;
 		}
-		TestSuite suite = tlContext.getSuite(tlProject.getProject(), context.getSuite().getName());
-		List<TestCase> testLinkCases = new LinkedList<>();
-		List<TestCase> existingCases = tlContext.getTestCases(tlProject.getPlan(), tlProject.getBuild());
-		Map<TestCase, ExecutionStatus> statusMap = new HashMap<>();
-		Map<TestCase, String> protocolMap = new HashMap<>();
-
-		boolean newPlan = false;
-
-		for (TestlinkCase tlCase : testCases.values()) {
-			List<TestCaseStep> steps = new ArrayList<>();
-			StringBuilder testCaseExecutionProtocol = new StringBuilder();
-			fillTestStepExecutionProtocol(tlCase, testCaseExecutionProtocol);
-			int number = 0;
-			for (TestlinkStep tlStep : tlCase.getSteps()) {
-				TestCaseStep step = createTestCaseStep(tlStep);
-				step.setNumber(number++);
-				steps.add(step);
-				fillTestStepExecutionProtocol(testCaseExecutionProtocol, tlStep);
+		long start = System.nanoTime();
+		try {
+			finish(context.getSuite().getName());
+		} finally {
+			recordTiming("onFinish", start);
+			reportMetrics(context.getSuite().getName() + '-' + context.getName());
+		}
+	}
+
+	/**
+	 * Waits for the connection and uploads all collected results.
+	 *
+	 * @param suiteName the test suite name
+	 */
+	private void finish(String suiteName) {
+		try {
+			if (null != connection) {
+				connect(suiteName);
 			}
+			if (null != tlProject) {
+				upload(suiteName);
+			}
+		} finally {
+			connection = null;
+			incrementalUploader = null;
+			closeJournal();
+		}
+	}
 
-			TestCase testCase = tlContext.createTestCase(tlCase.getTestCaseName(), suite, tlProject.getProject(),
-					steps);
-			testLinkCases.add(testCase);
-			statusMap.put(testCase, tlCase.getStatus());
-			protocolMap.put(testCase, testCaseExecutionProtocol.toString());
-			for (TestCase tc : existingCases) {
-				if (testCase.getId().equals(tc.getId()) && testCase.getVersion() > tc.getVersion()) {
-					newPlan = true; // new testcase version of already assigned test - new test plan needed
-				}
+	/**
+	 * Waits for project, plan and build. If TestLink is not available, the
+	 * collected results are recorded to the journal.
+	 *
+	 * @param suiteName the test suite name
+	 */
+	private void connect(String suiteName) {
+		try {
+			tlProject = connection.join();
+			if (null != incrementalUploader) {
+				uploader = incrementalUploader.exceptionally(ex -> {
+					log.warn("Incremental upload not started, uploading on finish.", ex);
+					return null;
+				}).join();
+			}
+		} catch (CompletionException completionException) {
+			if (!(completionException.getCause() instanceof TestLinkAPIException)) {
+				throw completionException;
 			}
+			TestLinkAPIException connectException = (TestLinkAPIException) completionException.getCause();
+			boolean fallback = null == journal && connectException instanceof TestlinkUnavailableException;
+			if (fallback) {
+				openFallbackJournal(System.getProperty("TestlinkIntegrationListener.Project"),
+						System.getProperty("TestlinkIntegrationListener.Build"), suiteName);
+			}
+			if (null == journal) {
+				throw connectException;
+			}
+			if (fallback) {
+				testCases.values().forEach(journal::testCase);
+			}
+			log.error("TestLink not available, results are recorded to journal", connectException);
+			tlProject = null;
+		}
+	}
+
+	private void recordTiming(String callback, long start) {
+		if (null != tlContext) {
+			tlContext.getMetrics().recordListener(callback, System.nanoTime() - start);
 		}
+	}
 
-		// it is not possible to change the existing testcase in the plan, so we create
-		// a new plan
-		if (newPlan) {
-			tlProject.setPlan(tlContext.createPlan(tlProject.getProject()));
-			tlProject.setBuild(tlContext.getBuild(tlProject.getPlan(), tlProject.getBuild().getName()));
+	/**
+	 * Logs the metrics summary of the finished run and writes it as JSON file, by
+	 * default to the Maven target directory if it exists. The file name gets the
+	 * run name appended, so each suite writes a file of its own.
+	 *
+	 * @param runName the name of the suite or test
+	 */
+	private void reportMetrics(String runName) {
+		if (null == tlContext) {
+			return;
 		}
+		TestlinkMetricsCollector metrics = tlContext.getMetrics().snapshot();
+		metrics.logSummary();
 
-		for (TestCase testCase : testLinkCases) {
-			tlContext.addTestCaseToPlan(testCase, tlProject.getPlan(), tlProject.getBuild(), tlProject.getProject());
-			Integer executionId = tlContext.setTestResult(testCase, tlProject.getPlan(), tlProject.getBuild(),
-					statusMap.get(testCase), protocolMap.get(testCase), null);
-			attachments.values().forEach(attachment -> tlContext.saveAttachment(executionId, attachment));
+		String metricsFile = System.getProperty("TestlinkIntegrationListener.MetricsFile");
+		if (null == metricsFile && Files.isDirectory(Paths.get("target"))) {
+			metricsFile = "target/testlink-metrics.json";
+		}
+		if (null != metricsFile) {
+			String fileName = Paths.get(metricsFile).getFileName().toString();
+			int extension = fileName.lastIndexOf('.') > 0 ? fileName.lastIndexOf('.') : fileName.length();
+			Path metricsPath = Paths.get(metricsFile).resolveSibling(fileName.substring(0, extension) + '-'
+					+ runName.replaceAll("[^\\w.-]", "_") + fileName.substring(extension));
+			try {
+				metrics.writeJson(metricsPath);
+			} catch (IOException metricsException) {
+				log.warn("Cannot write metrics to " + metricsPath, metricsException);
+			}
 		}
 	}
 
-	private void fillTestStepExecutionProtocol(TestlinkCase tlCase, StringBuilder testCaseExecutionProtocol) {
-		testCaseExecutionProtocol.append(tlCase.getTestCaseName()).append(": ").append(tlCase.getDuration())
-				.append(System.lineSeparator());
+	private void upload(String suiteName) {
+		try {
+			if (null == uploader) {
+				TestSuite suite = tlContext.getSuite(tlProject.getProject(), suiteName);
+				uploader = new TestlinkUploader(tlContext, tlProject, suite, false, journal, attachmentProcessor);
+			}
+			testCases.values().forEach(uploader::submit);
+			uploader.finish();
+		} catch (TestLinkAPIException uploadException) {
+			if (null == journal && !(uploadException instanceof TestlinkUnavailableException)) {
+				throw uploadException;
+			}
+			log.error("Upload to TestLink failed, results are recorded in journal for replay.", uploadException);
+		}
+
+		// an open journal contains all results already, without upload marks for the missing ones
+		Collection<TestlinkCase> pendingCases = null == uploader ? testCases.values() : uploader.getPendingCases();
+		if (null == journal && !pendingCases.isEmpty()) {
+			openFallbackJournal(tlProject.getProject().getName(), tlProject.getBuild().getName(), suiteName);
+			if (null != journal) {
+				pendingCases.forEach(journal::testCase);
+				log.error(pendingCases.size() + " test cases could not be uploaded, recorded in journal for replay.");
+			}
+		}
 	}
 
-	private void fillTestStepExecutionProtocol(StringBuilder testCaseExecutionProtocol, TestlinkStep tlStep) {
-		testCaseExecutionProtocol.append(tlStep.getTestStepName()).append(": ").append(tlStep.getStatus())
-				.append(System.lineSeparator()).append(System.lineSeparator()).append("Parameters:")
-				.append(System.lineSeparator()).append(tlStep.getParameters()).append(System.lineSeparator())
-				.append(tlStep.getStackTrace());
+	/**
+	 * Opens the fallback journal for results which cannot be sent to TestLink.
+	 *
+	 * @param projectName the TestLink project name
+	 * @param buildName   the build name
+	 * @param suiteName   the test suite name
+	 */
+	private void openFallbackJournal(String projectName, String buildName, String suiteName) {
+		String journalFile = System.getProperty("TestlinkIntegrationListener.FallbackJournal",
+				"target/testlink-fallback.journal");
+		try {
+			journal = new TestlinkJournal(Paths.get(journalFile));
+			journal.run(projectName, buildName, suiteName);
+			log.warn("TestLink unavailable, results are recorded to fallback journal " + journalFile);
+		} catch (IOException journalException) {
+			log.error("Cannot open fallback journal " + journalFile, journalException);
+		}
 	}
 
-	private String printParameters(Object[] parameters) {
-		StringBuilder result = new StringBuilder();
-		if (parameters.length > 0) {
-			result.append("Parameters:\r\n");
-			for (Object o : parameters) {
-				result.append(o.getClass().getName()).append(": ").append(o.toString());
+	private void closeJournal() {
+		if (null != journal) {
+			try {
+				journal.close();
+			} catch (IOException journalException) {
+				log.error("Cannot close journal.", journalException);
 			}
-		} else {
-			result.append("No parameters.\r\n");
+			journal = null;
 		}
+	}
 
-		return result.toString();
+	/**
+	 * Starts collecting results for a project without connecting to TestLink,
+	 * e.g. for benchmarks of the collection callbacks.
+	 *
+	 * @param project the project results are collected for
+	 */
+	void startCollecting(TestlinkProject project) {
+		tlProject = project;
+		testCases = new ConcurrentHashMap<>();
+		caseNamesByClass = new ConcurrentHashMap<>();
+		stackTraces = TestlinkStackTraces.fromSystemProperties();
 	}
 
-	private TestlinkStep createTestStep(ITestResult result) {
+	@Override
+	public void onAfterClass(ITestClass testClass) {
+		if (null == uploader) {
+			return;
+		}
+		Set<String> caseNames = caseNamesByClass.remove(testClass.getName());
+		if (null != caseNames) {
+			caseNames.stream().map(testCases::remove).filter(tlCase -> null != tlCase).forEach(uploader::submit);
+		}
+	}
+
+	TestlinkStep createTestStep(ITestResult result) {
 		TestlinkCase testCase = testCases.computeIfAbsent(result.getInstanceName(),
 				t -> new TestlinkCase(result.getInstanceName()));
-		TestlinkStep step = new TestlinkStep(result.getMethod().getMethodName(),
-				printParameters(result.getParameters()));
+		caseNamesByClass.computeIfAbsent(result.getTestClass().getName(), c -> ConcurrentHashMap.newKeySet())
+				.add(result.getInstanceName());
+		TestlinkStep step = TestlinkStep.of(result.getMethod().getMethodName(), result.getParameters());
+		step.setDurationMillis(result.getEndMillis() - result.getStartMillis());
 		testCase.addStep(step);
-		Duration elapsedTime = Duration.ofMillis(result.getEndMillis() - result.getStartMillis());
-		testCase.setDuration(String.format("%d hours, %d mins, %d seconds", elapsedTime.toHours(),
-				elapsedTime.toMinutesPart(), elapsedTime.toSecondsPart()));
+		testCase.addDuration(step.getDurationMillis());
 		return step;
 	}
-
-	private TestCaseStep createTestCaseStep(TestlinkStep tlStep) {
-		TestCaseStep result = new TestCaseStep();
-		result.setActions("Execute method " + tlStep.getTestStepName());
-		result.setExpectedResults("Test runs successfully");
-		result.setExecutionType(ExecutionType.AUTOMATED);
-		return result;
-	}
 }
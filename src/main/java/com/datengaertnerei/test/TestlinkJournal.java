@@ -0,0 +1,456 @@
+package com.datengaertnerei.test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.datengaertnerei.test.TestlinkStep.TestStatus;
+
+import br.eti.kinoshita.testlinkjavaapi.constants.ExecutionStatus;
+
+/**
+ * Append-only local journal of test results. Every event is written as one
+ * tab separated line as soon as it happens, attachments are copied to a
+ * directory next to the journal file. A journal can be read and uploaded later
+ * by {@link TestlinkJournalReplay}.
+ * <p>
+ * Records refer to the run header they follow. Each run gets a unique id, so
+ * several test runs appended to one journal, e.g. the fallback journal, stay
+ * apart even for equal project, build and suite.
+ *
+ * @author Jens Dibbern
+ */
+public class TestlinkJournal implements AutoCloseable {
+	private static Log log = LogFactory.getLog(TestlinkJournal.class);
+
+	private static final String RUN = "RUN";
+	private static final String STEP = "STEP";
+	private static final String STATUS = "STATUS";
+	private static final String DURATION = "DURATION";
+	private static final String ATTACHMENT = "ATTACHMENT";
+	private static final String UPLOADED = "UPLOADED";
+	private static final String NULL = "\\N";
+	private static final char SEPARATOR = '\t';
+
+	private final Path journalFile;
+	private final Path attachmentDir;
+	private final AtomicInteger attachmentCount = new AtomicInteger();
+	private final BufferedWriter writer;
+
+	/** Test results of one run of a project/build/suite combination read from a journal. */
+	public static class Run {
+		private final String runId;
+		private final String projectName;
+		private final String buildName;
+		private final String suiteName;
+		private final Map<String, TestlinkCase> testCases = new LinkedHashMap<>();
+		private final Set<String> uploadedCases = new HashSet<>();
+
+		Run(String runId, String projectName, String buildName, String suiteName) {
+			this.runId = runId;
+			this.projectName = projectName;
+			this.buildName = buildName;
+			this.suiteName = suiteName;
+		}
+
+		public String getRunId() {
+			return runId;
+		}
+
+		public String getProjectName() {
+			return projectName;
+		}
+
+		public String getBuildName() {
+			return buildName;
+		}
+
+		public String getSuiteName() {
+			return suiteName;
+		}
+
+		public Collection<TestlinkCase> getTestCases() {
+			return testCases.values();
+		}
+
+		public boolean isUploaded(String testCaseName) {
+			return uploadedCases.contains(testCaseName);
+		}
+
+		private TestlinkCase getTestCase(String testCaseName) {
+			return testCases.computeIfAbsent(testCaseName, TestlinkCase::new);
+		}
+
+		/**
+		 * Adds the test cases of a run of another shard. Steps with equal name and
+		 * parameters are taken only once, e.g. if a shard was restarted, and only
+		 * the duration of the steps taken is added. A test case counts as uploaded
+		 * only if it was uploaded by all shards.
+		 *
+		 * @param other a run with equal project, build and suite
+		 */
+		void merge(Run other) {
+			for (TestlinkCase otherCase : other.getTestCases()) {
+				String testCaseName = otherCase.getTestCaseName();
+				TestlinkCase tlCase = testCases.get(testCaseName);
+				if (null == tlCase) {
+					testCases.put(testCaseName, otherCase);
+					if (other.isUploaded(testCaseName)) {
+						uploadedCases.add(testCaseName);
+					}
+					continue;
+				}
+				if (!other.isUploaded(testCaseName)) {
+					uploadedCases.remove(testCaseName);
+				}
+
+				Set<String> knownSteps = new HashSet<>();
+				tlCase.getSteps().forEach(step -> knownSteps.add(stepKey(step)));
+				Set<String> testMethods = new LinkedHashSet<>();
+				int takenSteps = 0;
+				long takenMillis = 0;
+				boolean stepDurations = true;
+				for (TestlinkStep step : otherCase.getSteps()) {
+					if (knownSteps.add(stepKey(step))) {
+						tlCase.addStep(step);
+						testMethods.add(step.getTestStepName());
+						takenSteps++;
+						if (TestlinkStep.NOT_MEASURED == step.getDurationMillis()) {
+							stepDurations = false;
+						} else {
+							takenMillis += step.getDurationMillis();
+						}
+					}
+				}
+				tlCase.updateStatus(otherCase.getStatus());
+				// without step durations the steps taken get their share of the test case duration
+				tlCase.addDuration(stepDurations ? takenMillis
+						: otherCase.getDurationMillis() * takenSteps / Math.max(1, otherCase.getSteps().size()));
+				testMethods.forEach(testMethod -> otherCase.getAttachments(testMethod)
+						.forEach(attachment -> tlCase.addAttachment(testMethod, attachment)));
+			}
+		}
+
+		private static String stepKey(TestlinkStep step) {
+			return step.getTestStepName() + SEPARATOR + step.getParameters();
+		}
+	}
+
+	/**
+	 * Opens the journal for appending, the file is created if necessary.
+	 *
+	 * @param journalFile the journal file
+	 * @throws IOException if the journal cannot be opened
+	 */
+	public TestlinkJournal(Path journalFile) throws IOException {
+		this(journalFile, journalFile.resolveSibling(journalFile.getFileName() + ".attachments"));
+	}
+
+	/**
+	 * Opens the journal for appending with attachments in the given directory,
+	 * e.g. the directory of the file the journal is renamed to later on.
+	 *
+	 * @param journalFile   the journal file
+	 * @param attachmentDir the attachment directory next to the journal file
+	 * @throws IOException if the journal cannot be opened
+	 */
+	TestlinkJournal(Path journalFile, Path attachmentDir) throws IOException {
+		this.journalFile = journalFile;
+		this.attachmentDir = attachmentDir;
+		if (null != journalFile.getParent()) {
+			Files.createDirectories(journalFile.getParent());
+		}
+		writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Starts a new run, all following records refer to it.
+	 *
+	 * @param projectName the TestLink project name
+	 * @param buildName   the build name
+	 * @param suiteName   the test suite name
+	 */
+	public void run(String projectName, String buildName, String suiteName) {
+		append(RUN, projectName, buildName, suiteName, UUID.randomUUID().toString());
+	}
+
+	/**
+	 * Continues a run read from this journal, e.g. to record upload marks on
+	 * replay. The following records are added to the earlier records of the run.
+	 *
+	 * @param run the run read from the journal
+	 */
+	void resume(Run run) {
+		append(RUN, run.getProjectName(), run.getBuildName(), run.getSuiteName(), run.getRunId());
+	}
+
+	/**
+	 * Records a finished test step.
+	 *
+	 * @param testCaseName the test case of the step
+	 * @param step         the finished step
+	 */
+	public void step(String testCaseName, TestlinkStep step) {
+		append(STEP, testCaseName, step.getTestStepName(), step.getStatus() == null ? null : step.getStatus().name(),
+				step.getParameters(), step.getStackTrace(),
+				String.valueOf(step.getDurationMillis()));
+	}
+
+	/**
+	 * Records the status of a test case.
+	 *
+	 * @param testCaseName the test case
+	 * @param status       the new status
+	 */
+	public void status(String testCaseName, ExecutionStatus status) {
+		append(STATUS, testCaseName, status.name());
+	}
+
+	/**
+	 * Records a duration to be added to a test case.
+	 *
+	 * @param testCaseName   the test case
+	 * @param durationMillis the duration in milliseconds
+	 */
+	public void duration(String testCaseName, long durationMillis) {
+		append(DURATION, testCaseName, String.valueOf(durationMillis));
+	}
+
+	/**
+	 * Copies the attachment content next to the journal and records a reference.
+	 *
+	 * @param testCaseName the test case the attachment belongs to
+	 * @param testMethod   the test method the attachment belongs to
+	 * @param attachment   the attachment
+	 */
+	public void attachment(String testCaseName, String testMethod, TestlinkAttachment attachment) {
+		try (InputStream content = attachment.openStream()) {
+			Files.createDirectories(attachmentDir);
+			Path file = attachmentDir.resolve(String.valueOf(attachmentCount.incrementAndGet()));
+			while (Files.exists(file)) { // journal may already contain attachments of earlier runs
+				file = attachmentDir.resolve(String.valueOf(attachmentCount.incrementAndGet()));
+			}
+			Files.copy(content, file, StandardCopyOption.REPLACE_EXISTING);
+			// reference relative to the journal, so journal and attachments can be moved
+			append(ATTACHMENT, testCaseName, attachment.getTitle(), attachment.getFileName(),
+					attachment.getContentType(), attachmentDir.getFileName().resolve(file.getFileName()).toString(),
+					testMethod);
+		} catch (IOException journalException) {
+			log.error("Could not journal attachment.", journalException);
+		}
+	}
+
+	/**
+	 * Records a complete test case with its steps, status, duration and
+	 * attachments, e.g. a test case which could not be uploaded.
+	 *
+	 * @param tlCase the test case
+	 */
+	public void testCase(TestlinkCase tlCase) {
+		String testCaseName = tlCase.getTestCaseName();
+		Set<String> testMethods = new LinkedHashSet<>();
+		for (TestlinkStep step : tlCase.getSteps()) {
+			step(testCaseName, step);
+			testMethods.add(step.getTestStepName());
+		}
+		if (null != tlCase.getStatus()) {
+			status(testCaseName, tlCase.getStatus());
+		}
+		duration(testCaseName, tlCase.getDurationMillis());
+		testMethods.forEach(testMethod -> tlCase.getAttachments(testMethod)
+				.forEach(attachment -> attachment(testCaseName, testMethod, attachment)));
+	}
+
+	/**
+	 * Records the successful upload of a test case.
+	 *
+	 * @param testCaseName the uploaded test case
+	 */
+	public void uploaded(String testCaseName) {
+		append(UPLOADED, testCaseName);
+	}
+
+	private synchronized void append(String... fields) {
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				if (i > 0) {
+					writer.write(SEPARATOR);
+				}
+				writer.write(escape(fields[i]));
+			}
+			writer.newLine();
+			writer.flush();
+		} catch (IOException journalException) {
+			throw new UncheckedIOException("Could not write journal " + journalFile, journalException);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+	/**
+	 * Reads all runs of a journal file. Records following a resumed run are
+	 * added to the run.
+	 *
+	 * @param journalFile the journal file
+	 * @return the runs in order of appearance
+	 * @throws IOException if the journal cannot be read
+	 */
+	public static List<Run> read(Path journalFile) throws IOException {
+		Map<String, Run> runs = new LinkedHashMap<>();
+		Run run = null;
+
+		try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+			String line;
+			while (null != (line = reader.readLine())) {
+				String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+				for (int i = 0; i < fields.length; i++) {
+					fields[i] = unescape(fields[i]);
+				}
+
+				if (RUN.equals(fields[0])) {
+					if (fields.length < 5) {
+						throw new IOException("Journal run without id: " + line);
+					}
+					run = runs.computeIfAbsent(fields[4], runId -> new Run(runId, fields[1], fields[2], fields[3]));
+					continue;
+				}
+				if (null == run) {
+					throw new IOException("Journal record without run: " + line);
+				}
+
+				switch (fields[0]) {
+				case STEP:
+					TestlinkStep step = new TestlinkStep(fields[2], fields[4]);
+					step.setStatus(fields[3] == null ? null : TestStatus.valueOf(fields[3]));
+					step.setStackTrace(fields[5]);
+					step.setDurationMillis(Long.parseLong(fields[6]));
+					run.getTestCase(fields[1]).addStep(step);
+					break;
+				case STATUS:
+					run.getTestCase(fields[1]).updateStatus(ExecutionStatus.valueOf(fields[2]));
+					break;
+				case DURATION:
+					run.getTestCase(fields[1]).addDuration(Long.parseLong(fields[2]));
+					break;
+				case ATTACHMENT:
+					run.getTestCase(fields[1]).addAttachment(fields[6], TestlinkAttachment
+							.of(journalFile.resolveSibling(fields[5]), fields[2], fields[3], fields[4]));
+					break;
+				case UPLOADED:
+					run.uploadedCases.add(fields[1]);
+					break;
+				default:
+					log.warn("Unknown journal record: " + line);
+				}
+			}
+		}
+
+		return new ArrayList<>(runs.values());
+	}
+
+	/**
+	 * Reads and merges the journals of a sharded test run. Runs with equal
+	 * project, build and suite are combined into one run, test cases occurring in
+	 * several shards are combined into one test case.
+	 *
+	 * @param journalFiles the journal files of all shards
+	 * @return the merged runs in order of appearance
+	 * @throws IOException if a journal cannot be read
+	 */
+	public static List<Run> merge(Collection<Path> journalFiles) throws IOException {
+		Map<String, Run> runs = new LinkedHashMap<>();
+		for (Path journalFile : journalFiles) {
+			for (Run run : read(journalFile)) {
+				String key = run.getProjectName() + SEPARATOR + run.getBuildName() + SEPARATOR + run.getSuiteName();
+				Run merged = runs.putIfAbsent(key, run);
+				if (null != merged) {
+					merged.merge(run);
+				}
+			}
+		}
+		return new ArrayList<>(runs.values());
+	}
+
+	/**
+	 * Records a complete run, e.g. the result of merged shard journals.
+	 * Attachments are copied next to this journal.
+	 *
+	 * @param run the run
+	 */
+	public void write(Run run) {
+		run(run.getProjectName(), run.getBuildName(), run.getSuiteName());
+		for (TestlinkCase tlCase : run.getTestCases()) {
+			testCase(tlCase);
+			if (run.isUploaded(tlCase.getTestCaseName())) {
+				uploaded(tlCase.getTestCaseName());
+			}
+		}
+	}
+
+	private static String escape(String value) {
+		if (null == value) {
+			return NULL;
+		}
+		StringBuilder result = new StringBuilder(value.length());
+		for (char c : value.toCharArray()) {
+			switch (c) {
+			case '\\':
+				result.append("\\\\");
+				break;
+			case '\t':
+				result.append("\\t");
+				break;
+			case '\n':
+				result.append("\\n");
+				break;
+			case '\r':
+				result.append("\\r");
+				break;
+			default:
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	private static String unescape(String value) {
+		if (NULL.equals(value)) {
+			return null;
+		}
+		StringBuilder result = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < value.length()) {
+				char next = value.charAt(++i);
+				result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+}
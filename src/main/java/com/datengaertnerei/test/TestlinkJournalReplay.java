@@ -0,0 +1,124 @@
+package com.datengaertnerei.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import br.eti.kinoshita.testlinkjavaapi.model.TestSuite;
+
+/**
+ * Uploads recorded journals to TestLink. Test cases already marked as uploaded
+ * are skipped, so a replay can be repeated until it succeeds. The TestLink
+ * connection is configured by the usual TestlinkIntegrationContext system
+ * properties.
+ * <p>
+ * Sharded test runs record one journal per shard in offline mode
+ * (TestlinkIntegrationListener.Offline and TestlinkIntegrationListener.Journal).
+ * With --merge the shard journals are combined into one journal, which is
+ * uploaded at once: test case versions and the need of a new test plan are
+ * resolved a single time and equal test cases of several shards are uploaded
+ * once.
+ *
+ * @author Jens Dibbern
+ */
+public class TestlinkJournalReplay {
+	private static Log log = LogFactory.getLog(TestlinkJournalReplay.class);
+
+	private TestlinkJournalReplay() {
+		// command line tool
+	}
+
+	/**
+	 * Replays all journal files given as arguments. With --merge the first file
+	 * is the merged journal, the following files are the shard journals.
+	 *
+	 * @param args the journal files
+	 * @throws IOException if a journal cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		boolean merge = args.length > 0 && "--merge".equals(args[0]);
+		if (args.length == 0 || (merge && args.length < 3)) {
+			System.err.println("Usage: TestlinkJournalReplay <journal file>...");
+			System.err.println("       TestlinkJournalReplay --merge <merged journal> <shard journal>...");
+			System.exit(1);
+		}
+
+		TestlinkIntegrationContext tlContext = TestlinkIntegrationContext.getInstance();
+		if (merge) {
+			List<Path> shardJournals = new ArrayList<>();
+			for (int i = 2; i < args.length; i++) {
+				shardJournals.add(Paths.get(args[i]));
+			}
+			merge(Paths.get(args[1]), shardJournals);
+			replay(tlContext, Paths.get(args[1]));
+		} else {
+			for (String journalFile : args) {
+				replay(tlContext, Paths.get(journalFile));
+			}
+		}
+	}
+
+	/**
+	 * Merges shard journals into one journal. The merged journal is written to a
+	 * temporary file and renamed when complete. An existing merged journal is
+	 * kept as it is, so an interrupted upload can be repeated without
+	 * duplicates.
+	 *
+	 * @param mergedJournal the merged journal file
+	 * @param shardJournals the journal files of all shards
+	 * @throws IOException if a journal cannot be read or written
+	 */
+	public static void merge(Path mergedJournal, List<Path> shardJournals) throws IOException {
+		if (Files.exists(mergedJournal)) {
+			log.info("Merged journal " + mergedJournal + " exists already, shard journals are not merged again");
+			return;
+		}
+
+		List<TestlinkJournal.Run> runs = TestlinkJournal.merge(shardJournals);
+		// attachment references are relative to the journal, so they refer to the final name
+		Path mergingJournal = mergedJournal.resolveSibling(mergedJournal.getFileName() + ".tmp");
+		Files.deleteIfExists(mergingJournal);
+		try (TestlinkJournal journal = new TestlinkJournal(mergingJournal,
+				mergedJournal.resolveSibling(mergedJournal.getFileName() + ".attachments"))) {
+			runs.forEach(journal::write);
+		}
+		Files.move(mergingJournal, mergedJournal, StandardCopyOption.ATOMIC_MOVE);
+		log.info(new StringBuilder("Merged ").append(shardJournals.size()).append(" shard journals into ")
+				.append(mergedJournal).append(", ")
+				.append(runs.stream().mapToInt(run -> run.getTestCases().size()).sum()).append(" test cases"));
+	}
+
+	/**
+	 * Uploads all test cases of a journal which have not been uploaded yet.
+	 *
+	 * @param tlContext   the TestLink integration context
+	 * @param journalFile the journal file
+	 * @throws IOException if the journal cannot be read
+	 */
+	public static void replay(TestlinkIntegrationContext tlContext, Path journalFile) throws IOException {
+		try (TestlinkJournal journal = new TestlinkJournal(journalFile)) {
+			for (TestlinkJournal.Run run : TestlinkJournal.read(journalFile)) {
+				log.info(new StringBuilder("Replaying journal ").append(journalFile).append(" for project ")
+						.append(run.getProjectName()).append(" and build ").append(run.getBuildName()));
+
+				TestlinkProject tlProject = tlContext.getProject(run.getProjectName());
+				tlProject.setBuild(tlContext.getBuild(tlProject.getPlan(), run.getBuildName()));
+				TestSuite suite = tlContext.getSuite(tlProject.getProject(), run.getSuiteName());
+
+				// upload marks must follow the header of their run
+				journal.resume(run);
+				TestlinkUploader uploader = new TestlinkUploader(tlContext, tlProject, suite, false, journal);
+				run.getTestCases().stream().filter(tlCase -> !run.isUploaded(tlCase.getTestCaseName()))
+						.forEach(uploader::submit);
+				uploader.finish();
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.datengaertnerei.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import br.eti.kinoshita.testlinkjavaapi.model.TestCaseStep;
+
+/**
+ * File-backed cache of TestLink names to ids, versions and step fingerprints.
+ * Entries expire after a configurable time to live, callers invalidate
+ * entries which turned out to be stale.
+ *
+ * @author Jens Dibbern
+ */
+class TestlinkMetadataCache {
+	private static Log log = LogFactory.getLog(TestlinkMetadataCache.class);
+
+	private static final String CFG_CACHE_DIR = "TestlinkIntegrationContext.CacheDir";
+	private static final String CFG_CACHE_TTL = "TestlinkIntegrationContext.CacheTTL";
+	private static final String DEFAULT_CACHE_DIR = "target";
+	private static final long DEFAULT_CACHE_TTL = 24L * 60 * 60;
+	private static final String CACHE_FILE = "testlink-metadata.properties";
+	private static final String SEPARATOR = "|";
+
+	private final Path cacheFile;
+	private final long ttlMillis;
+	private final Properties entries = new Properties();
+	private boolean dirty;
+
+	/**
+	 * Creates a cache and loads existing entries.
+	 *
+	 * @param cacheFile the cache file, null for a cache in memory only
+	 * @param ttlMillis the time to live of entries
+	 */
+	TestlinkMetadataCache(Path cacheFile, long ttlMillis) {
+		this.cacheFile = cacheFile;
+		this.ttlMillis = ttlMillis;
+
+		if (null != cacheFile && Files.isReadable(cacheFile)) {
+			try (InputStream input = Files.newInputStream(cacheFile)) {
+				entries.load(input);
+			} catch (IOException | IllegalArgumentException cacheException) {
+				log.warn("Ignoring unreadable metadata cache " + cacheFile, cacheException);
+				entries.clear();
+			}
+		}
+	}
+
+	/**
+	 * Creates the cache configured by system properties. The cache is kept in
+	 * memory only if the cache directory does not exist.
+	 *
+	 * @return the cache
+	 */
+	static TestlinkMetadataCache fromSystemProperties() {
+		Path cacheDir = Paths.get(System.getProperty(CFG_CACHE_DIR, DEFAULT_CACHE_DIR));
+		return new TestlinkMetadataCache(Files.isDirectory(cacheDir) ? cacheDir.resolve(CACHE_FILE) : null,
+				Long.getLong(CFG_CACHE_TTL, DEFAULT_CACHE_TTL) * 1000);
+	}
+
+	/**
+	 * Reads an entry.
+	 *
+	 * @param key the entry key
+	 * @return the cached values or null if missing or expired
+	 */
+	synchronized String[] get(String key) {
+		String entry = entries.getProperty(key);
+		if (null == entry) {
+			return null;
+		}
+		String[] fields = entry.split("\\" + SEPARATOR, -1);
+		try {
+			if (System.currentTimeMillis() - Long.parseLong(fields[0]) > ttlMillis) {
+				remove(key);
+				return null;
+			}
+		} catch (NumberFormatException invalidEntry) {
+			remove(key);
+			return null;
+		}
+		String[] values = new String[fields.length - 1];
+		System.arraycopy(fields, 1, values, 0, values.length);
+		return values;
+	}
+
+	/**
+	 * Writes an entry, the last value may contain the separator.
+	 *
+	 * @param key    the entry key
+	 * @param values the values to cache
+	 */
+	synchronized void put(String key, Object... values) {
+		StringBuilder entry = new StringBuilder().append(System.currentTimeMillis());
+		for (Object value : values) {
+			entry.append(SEPARATOR).append(value);
+		}
+		entries.setProperty(key, entry.toString());
+		dirty = true;
+	}
+
+	/**
+	 * Removes an entry.
+	 *
+	 * @param key the entry key
+	 */
+	synchronized void remove(String key) {
+		dirty |= null != entries.remove(key);
+	}
+
+	/**
+	 * Removes all entries.
+	 *
+	 * @return true if there were any entries
+	 */
+	synchronized boolean clear() {
+		boolean cleared = !entries.isEmpty();
+		entries.clear();
+		dirty |= cleared;
+		return cleared;
+	}
+
+	/** Writes changed entries to the cache file. */
+	synchronized void save() {
+		if (!dirty || null == cacheFile) {
+			return;
+		}
+		try {
+			Path tempFile = Files.createTempFile(cacheFile.getParent(), CACHE_FILE, ".tmp");
+			try (OutputStream output = Files.newOutputStream(tempFile)) {
+				entries.store(output, "TestLinkNGIntegration metadata cache");
+			}
+			Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+			dirty = false;
+		} catch (IOException cacheException) {
+			log.warn("Cannot save metadata cache " + cacheFile, cacheException);
+		}
+	}
+
+	/**
+	 * Calculates a fingerprint of test steps, independent of the step order like
+	 * the step comparison of the integration context.
+	 *
+	 * @param steps the test steps
+	 * @return the hex encoded fingerprint
+	 */
+	static String fingerprint(List<TestCaseStep> steps) {
+		return TestlinkHashes.sha256(steps.stream().map(step -> String.valueOf(step.getActions())).sorted()
+				.collect(Collectors.joining("\n")));
+	}
+}
@@ -0,0 +1,34 @@
+package com.datengaertnerei.test;
+
+/**
+ * Receives performance measurements of the TestLink integration.
+ *
+ * @author Jens Dibbern
+ */
+public interface TestlinkMetrics {
+
+	/**
+	 * Records a remote TestLink call.
+	 *
+	 * @param method the remote method
+	 * @param nanos  the duration of the call
+	 * @param failed true if the call failed
+	 */
+	void recordCall(String method, long nanos, boolean failed);
+
+	/**
+	 * Records an uploaded attachment.
+	 *
+	 * @param bytes the size of the uploaded content, after processing by the
+	 *              attachment policy
+	 */
+	void recordAttachment(long bytes);
+
+	/**
+	 * Records the duration of a listener callback.
+	 *
+	 * @param callback the listener callback
+	 * @param nanos    the duration of the callback
+	 */
+	void recordListener(String callback, long nanos);
+}
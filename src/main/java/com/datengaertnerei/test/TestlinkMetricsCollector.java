@@ -0,0 +1,238 @@
+package com.datengaertnerei.test;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Collects call counts, errors and latency histograms in memory and reports
+ * them as log line or JSON summary. The histograms use exponential buckets,
+ * so percentiles are accurate to about 20 percent. Values are cumulative until
+ * a snapshot is taken, e.g. at the end of each suite.
+ *
+ * @author Jens Dibbern
+ */
+public class TestlinkMetricsCollector implements TestlinkMetrics {
+	private static Log log = LogFactory.getLog(TestlinkMetricsCollector.class);
+
+	private static final int BUCKETS = 100;
+	private static final double BUCKET_GROWTH = 1.2;
+	private static final long FIRST_BUCKET_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+	private static final long[] BUCKET_LIMITS = new long[BUCKETS];
+
+	static {
+		double bucketLimit = FIRST_BUCKET_NANOS;
+		for (int i = 0; i < BUCKETS; i++) {
+			BUCKET_LIMITS[i] = (long) bucketLimit;
+			bucketLimit *= BUCKET_GROWTH;
+		}
+		BUCKET_LIMITS[BUCKETS - 1] = Long.MAX_VALUE;
+	}
+
+	private volatile Measurements current;
+
+	/** Measurements since the last snapshot. */
+	private static class Measurements {
+		private final Map<String, Timer> calls = new ConcurrentHashMap<>();
+		private final Map<String, Timer> listener = new ConcurrentHashMap<>();
+		private final LongAdder attachments = new LongAdder();
+		private final LongAdder attachmentBytes = new LongAdder();
+	}
+
+	/** Creates an empty collector. */
+	public TestlinkMetricsCollector() {
+		this(new Measurements());
+	}
+
+	private TestlinkMetricsCollector(Measurements measurements) {
+		current = measurements;
+	}
+
+	/** Count, errors and latency histogram of one call type. */
+	static class Timer {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+		void record(long nanos, boolean failed) {
+			count.increment();
+			if (failed) {
+				errors.increment();
+			}
+			totalNanos.add(nanos);
+			maxNanos.accumulateAndGet(nanos, Math::max);
+			histogram.incrementAndGet(bucket(nanos));
+		}
+
+		long getCount() {
+			return count.sum();
+		}
+
+		long getErrors() {
+			return errors.sum();
+		}
+
+		long getTotalNanos() {
+			return totalNanos.sum();
+		}
+
+		/**
+		 * Estimates a percentile by the upper limit of its bucket.
+		 *
+		 * @param percentile the percentile between 0 and 100
+		 * @return the latency in nanoseconds
+		 */
+		long getPercentileNanos(double percentile) {
+			long total = 0;
+			long[] counts = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = histogram.get(i);
+				total += counts[i];
+			}
+			long rank = (long) Math.ceil(total * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank && seen > 0) {
+					return Math.min(BUCKET_LIMITS[i], maxNanos.get());
+				}
+			}
+			return 0;
+		}
+
+		private static int bucket(long nanos) {
+			for (int i = 0; i < BUCKETS; i++) {
+				if (nanos <= BUCKET_LIMITS[i]) {
+					return i;
+				}
+			}
+			return BUCKETS - 1;
+		}
+	}
+
+	@Override
+	public void recordCall(String method, long nanos, boolean failed) {
+		current.calls.computeIfAbsent(method, m -> new Timer()).record(nanos, failed);
+	}
+
+	@Override
+	public void recordAttachment(long bytes) {
+		Measurements measurements = current;
+		measurements.attachments.increment();
+		measurements.attachmentBytes.add(Math.max(0, bytes));
+	}
+
+	@Override
+	public void recordListener(String callback, long nanos) {
+		current.listener.computeIfAbsent(callback, c -> new Timer()).record(nanos, false);
+	}
+
+	/**
+	 * Takes the measurements recorded so far and starts over, so each suite
+	 * reports its own calls only.
+	 *
+	 * @return a collector with the measurements since the last snapshot
+	 */
+	public TestlinkMetricsCollector snapshot() {
+		Measurements taken;
+		synchronized (this) {
+			taken = current;
+			current = new Measurements();
+		}
+		return new TestlinkMetricsCollector(taken);
+	}
+
+	/**
+	 * Creates a one line summary, remote methods ordered by total time.
+	 *
+	 * @return the summary
+	 */
+	public String summary() {
+		Measurements measurements = current;
+		List<Map.Entry<String, Timer>> entries = new ArrayList<>(measurements.calls.entrySet());
+		entries.sort(
+				Comparator.comparingLong((Map.Entry<String, Timer> e) -> e.getValue().getTotalNanos()).reversed());
+
+		StringBuilder summary = new StringBuilder("TestLink calls:");
+		for (Map.Entry<String, Timer> entry : entries) {
+			Timer timer = entry.getValue();
+			summary.append(' ').append(entry.getKey()).append(' ').append(timer.getCount()).append('x');
+			if (timer.getErrors() > 0) {
+				summary.append(" (").append(timer.getErrors()).append(" errors)");
+			}
+			summary.append(" p50/p95/p99 ").append(millis(timer.getPercentileNanos(50))).append('/')
+					.append(millis(timer.getPercentileNanos(95))).append('/')
+					.append(millis(timer.getPercentileNanos(99))).append(" ms,");
+		}
+		summary.append(" attachments ").append(measurements.attachments.sum()).append(" (")
+				.append(measurements.attachmentBytes.sum()).append(" bytes)");
+		new TreeMap<>(measurements.listener).forEach((callback, timer) -> summary.append(", ").append(callback).append(' ')
+				.append(millis(timer.getTotalNanos())).append(" ms"));
+		return summary.toString();
+	}
+
+	/** Writes the summary to the log. */
+	public void logSummary() {
+		log.info(summary());
+	}
+
+	/**
+	 * Writes all measurements as JSON document.
+	 *
+	 * @param file the JSON file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeJson(Path file) throws IOException {
+		if (null != file.getParent()) {
+			Files.createDirectories(file.getParent());
+		}
+		Measurements measurements = current;
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write("{\n  \"calls\": ");
+			writeTimers(writer, measurements.calls);
+			writer.write(",\n  \"attachments\": {\"count\": " + measurements.attachments.sum() + ", \"bytes\": "
+					+ measurements.attachmentBytes.sum() + "},\n  \"listener\": ");
+			writeTimers(writer, measurements.listener);
+			writer.write("\n}\n");
+		}
+	}
+
+	private static void writeTimers(Writer writer, Map<String, Timer> timers) throws IOException {
+		writer.write('{');
+		String separator = "\n";
+		for (Map.Entry<String, Timer> entry : new TreeMap<>(timers).entrySet()) {
+			Timer timer = entry.getValue();
+			writer.write(separator);
+			writer.write("    \"" + entry.getKey().replace("\\", "\\\\").replace("\"", "\\\"") + "\": {\"count\": "
+					+ timer.getCount() + ", \"errors\": " + timer.getErrors() + ", \"totalMillis\": "
+					+ millis(timer.getTotalNanos()) + ", \"p50Millis\": " + millis(timer.getPercentileNanos(50))
+					+ ", \"p95Millis\": " + millis(timer.getPercentileNanos(95)) + ", \"p99Millis\": "
+					+ millis(timer.getPercentileNanos(99)) + ", \"maxMillis\": " + millis(timer.maxNanos.get())
+					+ "}");
+			separator = ",\n";
+		}
+		writer.write(timers.isEmpty() ? "}" : "\n  }");
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+}
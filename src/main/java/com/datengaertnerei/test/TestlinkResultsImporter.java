@@ -0,0 +1,266 @@
+package com.datengaertnerei.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.datengaertnerei.test.TestlinkStep.TestStatus;
+
+import br.eti.kinoshita.testlinkjavaapi.constants.ExecutionStatus;
+import br.eti.kinoshita.testlinkjavaapi.model.TestSuite;
+
+/**
+ * Imports TestNG result files (testng-results.xml) into TestLink, for test runs
+ * without the listener. Test methods are mapped to test cases and steps the
+ * same way as by {@link TestlinkIntegrationListener}. The file is read with a
+ * streaming parser and the test cases of each test class are uploaded as soon
+ * as the class is complete, exception output is limited to the configured
+ * number of stack trace frames. Project and build are configured by the
+ * listener system properties TestlinkIntegrationListener.Project and
+ * TestlinkIntegrationListener.Build, the TestLink connection by the usual
+ * TestlinkIntegrationContext system properties.
+ *
+ * @author Jens Dibbern
+ */
+public class TestlinkResultsImporter {
+	private static Log log = LogFactory.getLog(TestlinkResultsImporter.class);
+
+	private static final String SUITE = "suite";
+	private static final String CLASS = "class";
+	private static final String TEST_METHOD = "test-method";
+	private static final String VALUE = "value";
+	private static final String FULL_STACKTRACE = "full-stacktrace";
+
+	private final int maxStackTraceLines;
+
+	/**
+	 * Creates a new importer.
+	 *
+	 * @param maxStackTraceLines the maximum number of lines kept of each stack
+	 *                           trace
+	 */
+	public TestlinkResultsImporter(int maxStackTraceLines) {
+		this.maxStackTraceLines = maxStackTraceLines;
+	}
+
+	/**
+	 * Imports all result files given as arguments.
+	 *
+	 * @param args the testng-results.xml files
+	 * @throws IOException if a result file cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		String projectName = System.getProperty("TestlinkIntegrationListener.Project");
+		String buildName = System.getProperty("TestlinkIntegrationListener.Build");
+		if (args.length == 0 || null == projectName || null == buildName) {
+			System.err.println("Usage: TestlinkResultsImporter <testng-results.xml>...");
+			System.err.println("       TestlinkIntegrationListener.Project and TestlinkIntegrationListener.Build"
+					+ " must be set");
+			System.exit(1);
+		}
+
+		TestlinkIntegrationContext tlContext = TestlinkIntegrationContext.getInstance();
+		// one line per frame and the exception message
+		TestlinkResultsImporter importer = new TestlinkResultsImporter(
+				TestlinkStackTraces.fromSystemProperties().getMaxFrames() + 1);
+		for (String resultsFile : args) {
+			importer.upload(tlContext, projectName, buildName, Paths.get(resultsFile));
+		}
+	}
+
+	/**
+	 * Uploads the results of a TestNG result file, one uploader per test suite.
+	 *
+	 * @param tlContext   the TestLink integration context
+	 * @param projectName the TestLink project name
+	 * @param buildName   the build name
+	 * @param resultsFile the testng-results.xml file
+	 * @throws IOException if the result file cannot be read
+	 */
+	public void upload(TestlinkIntegrationContext tlContext, String projectName, String buildName, Path resultsFile)
+			throws IOException {
+		log.info(new StringBuilder("Importing ").append(resultsFile).append(" for project ").append(projectName)
+				.append(" and build ").append(buildName));
+
+		Map<String, TestlinkUploader> uploaders = new LinkedHashMap<>();
+		try (InputStream results = Files.newInputStream(resultsFile)) {
+			read(results, (suiteName, tlCase) -> uploaders.computeIfAbsent(suiteName, name -> {
+				TestlinkProject tlProject = tlContext.getProject(projectName);
+				tlProject.setBuild(tlContext.getBuild(tlProject.getPlan(), buildName));
+				TestSuite suite = tlContext.getSuite(tlProject.getProject(), name);
+				return new TestlinkUploader(tlContext, tlProject, suite, true, null);
+			}).submit(tlCase));
+		} finally {
+			uploaders.values().forEach(TestlinkUploader::finish);
+		}
+	}
+
+	/**
+	 * Reads a TestNG result file. Configuration methods are ignored, the test
+	 * cases of a test class are passed on when the class is complete.
+	 *
+	 * @param results  the content of a testng-results.xml file
+	 * @param consumer receives the test suite name and each complete test case
+	 * @throws IOException if the result file cannot be read or parsed
+	 */
+	public void read(InputStream results, BiConsumer<String, TestlinkCase> consumer) throws IOException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+		try {
+			XMLStreamReader reader = factory.createXMLStreamReader(results);
+			try {
+				String suiteName = null;
+				String className = null;
+				Map<String, TestlinkCase> classCases = new LinkedHashMap<>();
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						switch (reader.getLocalName()) {
+						case SUITE:
+							suiteName = reader.getAttributeValue(null, "name");
+							break;
+						case CLASS:
+							className = reader.getAttributeValue(null, "name");
+							classCases.clear();
+							break;
+						case TEST_METHOD:
+							if (!Boolean.parseBoolean(reader.getAttributeValue(null, "is-config"))) {
+								readTestMethod(reader, className, classCases);
+							}
+							break;
+						default:
+							break;
+						}
+					} else if (event == XMLStreamConstants.END_ELEMENT && CLASS.equals(reader.getLocalName())) {
+						String testSuite = suiteName;
+						classCases.values().forEach(tlCase -> consumer.accept(testSuite, tlCase));
+						classCases.clear();
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException parseException) {
+			throw new IOException("Cannot parse TestNG results", parseException);
+		}
+	}
+
+	private void readTestMethod(XMLStreamReader reader, String className, Map<String, TestlinkCase> classCases)
+			throws XMLStreamException {
+		String methodName = reader.getAttributeValue(null, "name");
+		String status = reader.getAttributeValue(null, "status");
+		String duration = reader.getAttributeValue(null, "duration-ms");
+		List<Object> parameters = new ArrayList<>();
+		String stackTrace = null;
+
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (VALUE.equals(reader.getLocalName())) {
+					boolean isNull = Boolean.parseBoolean(reader.getAttributeValue(null, "is-null"));
+					String value = readText(reader, 0);
+					parameters.add(isNull ? null : value);
+				} else if (FULL_STACKTRACE.equals(reader.getLocalName())) {
+					stackTrace = readText(reader, maxStackTraceLines);
+				} else {
+					depth++;
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+
+		// the listener uses the instance name, which is the class name unless the test overrides toString
+		TestlinkCase testCase = classCases.computeIfAbsent(className, TestlinkCase::new);
+		TestlinkStep step = TestlinkStep.of(methodName, parameters.toArray());
+		testCase.addStep(step);
+		if (null != duration && duration.matches("\\d+")) {
+			step.setDurationMillis(Long.parseLong(duration));
+			testCase.addDuration(step.getDurationMillis());
+		}
+		if ("PASS".equals(status)) {
+			step.setStatus(TestStatus.PASSED);
+			testCase.updateStatus(ExecutionStatus.PASSED);
+		} else if ("FAIL".equals(status)) {
+			step.setStatus(TestStatus.FAILED);
+			step.setStackTrace(stackTrace);
+			testCase.updateStatus(ExecutionStatus.FAILED);
+		} else {
+			step.setStatus(TestStatus.BLOCKED);
+		}
+	}
+
+	/**
+	 * Reads the text of the current element up to its end. Only the first lines
+	 * are kept, so large exception output is not held in memory.
+	 *
+	 * @param reader   the reader positioned at the start of the element
+	 * @param maxLines the maximum number of lines kept, 0 for all
+	 * @return the text
+	 * @throws XMLStreamException if the element cannot be read
+	 */
+	private static String readText(XMLStreamReader reader, int maxLines) throws XMLStreamException {
+		StringBuilder text = new StringBuilder();
+		int lines = 0;
+		int skippedLines = 0;
+		boolean skippedContent = false;
+		int event;
+		while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+			if (event != XMLStreamConstants.CHARACTERS && event != XMLStreamConstants.CDATA) {
+				continue;
+			}
+			int start = reader.getTextStart();
+			int end = start + reader.getTextLength();
+			char[] characters = reader.getTextCharacters();
+			for (int i = start; i < end; i++) {
+				char c = characters[i];
+				if (text.length() == 0 && Character.isWhitespace(c)) {
+					continue; // indentation of the result file
+				}
+				if (maxLines > 0 && lines >= maxLines) {
+					if (c == '\n') {
+						skippedLines += skippedContent ? 1 : 0;
+						skippedContent = false;
+					} else if (!Character.isWhitespace(c)) {
+						skippedContent = true;
+					}
+					continue;
+				}
+				text.append(c);
+				if (c == '\n') {
+					lines++;
+				}
+			}
+		}
+
+		// indentation of the closing tag
+		int length = text.length();
+		while (length > 0 && Character.isWhitespace(text.charAt(length - 1))) {
+			length--;
+		}
+		text.setLength(length);
+		skippedLines += skippedContent ? 1 : 0;
+		if (skippedLines > 0) {
+			text.append(System.lineSeparator()).append("\t... ").append(skippedLines).append(" more lines");
+		}
+		return text.toString();
+	}
+}
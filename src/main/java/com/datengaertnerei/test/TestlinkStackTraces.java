@@ -0,0 +1,221 @@
+package com.datengaertnerei.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fingerprints and renders stack traces of failed test methods. The fingerprint
+ * consists of the exception types and the top frames and groups similar
+ * failures. Failures with identical frames and causes share their rendered
+ * frames, which are stored once per run. Frames of test frameworks and
+ * reflection are collapsed, the number of frames per exception is limited.
+ *
+ * @author Jens Dibbern
+ */
+class TestlinkStackTraces {
+
+	private static final String CFG_MAX_FRAMES = "TestlinkIntegrationListener.StackTraceFrames";
+	private static final String CFG_COLLAPSE = "TestlinkIntegrationListener.StackTraceCollapse";
+	private static final int DEFAULT_MAX_FRAMES = 40;
+	private static final String DEFAULT_COLLAPSE = "org.testng.,org.apache.maven.surefire.,sun.reflect.,"
+			+ "jdk.internal.reflect.,java.lang.reflect.,java.util.concurrent.,java.lang.Thread.";
+	private static final int FINGERPRINT_FRAMES = 5;
+	private static final int MAX_CAUSES = 10;
+	private static final String NEWLINE = System.lineSeparator();
+
+	private final int maxFrames;
+	private final String[] collapsePrefixes;
+	private final Map<String, String> frames = new ConcurrentHashMap<>();
+
+	/** Stack trace of one failure, the frames are shared with equal failures. */
+	static class Trace {
+		private final String fingerprint;
+		private final String key;
+		private final String message;
+		private final String frames;
+
+		private Trace(String fingerprint, String key, String message, String frames) {
+			this.fingerprint = fingerprint;
+			this.key = key;
+			this.message = message;
+			this.frames = frames;
+		}
+
+		/**
+		 * Provides the fingerprint, equal for failures with the same exception
+		 * types and top frames.
+		 *
+		 * @return the fingerprint
+		 */
+		String getFingerprint() {
+			return fingerprint;
+		}
+
+		/**
+		 * Provides the key of the rendered frames, equal only for failures with
+		 * identical frames and causes.
+		 *
+		 * @return the key
+		 */
+		String getKey() {
+			return key;
+		}
+
+		String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String toString() {
+			return message + NEWLINE + frames;
+		}
+	}
+
+	/**
+	 * Creates a new renderer.
+	 *
+	 * @param maxFrames        the maximum number of frames per exception
+	 * @param collapsePrefixes class name prefixes of collapsed frames
+	 */
+	TestlinkStackTraces(int maxFrames, String... collapsePrefixes) {
+		this.maxFrames = maxFrames;
+		this.collapsePrefixes = collapsePrefixes;
+	}
+
+	/**
+	 * Creates a renderer configured by system properties.
+	 *
+	 * @return the renderer
+	 */
+	static TestlinkStackTraces fromSystemProperties() {
+		String collapse = System.getProperty(CFG_COLLAPSE, DEFAULT_COLLAPSE);
+		return new TestlinkStackTraces(Integer.getInteger(CFG_MAX_FRAMES, DEFAULT_MAX_FRAMES),
+				collapse.trim().isEmpty() ? new String[0] : collapse.trim().split("\\s*,\\s*"));
+	}
+
+	/**
+	 * Provides the maximum number of frames per exception.
+	 *
+	 * @return the maximum number of frames
+	 */
+	int getMaxFrames() {
+		return maxFrames;
+	}
+
+	/**
+	 * Fingerprints a failure and renders its frames unless a failure with
+	 * identical frames and causes has been rendered before.
+	 *
+	 * @param throwable the failure, may be null
+	 * @return the stack trace or null
+	 */
+	Trace of(Throwable throwable) {
+		if (null == throwable) {
+			return null;
+		}
+		List<Throwable> chain = causes(throwable);
+		String key = key(chain);
+		return new Trace(fingerprint(chain), key, String.valueOf(throwable),
+				frames.computeIfAbsent(key, k -> render(chain)));
+	}
+
+	/**
+	 * Provides the number of distinct stack traces of this run.
+	 *
+	 * @return the number of rendered stack traces
+	 */
+	int size() {
+		return frames.size();
+	}
+
+	private static List<Throwable> causes(Throwable throwable) {
+		List<Throwable> chain = new ArrayList<>();
+		Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Throwable cause = throwable; null != cause && chain.size() < MAX_CAUSES
+				&& seen.add(cause); cause = cause.getCause()) {
+			chain.add(cause);
+		}
+		return chain;
+	}
+
+	private static String fingerprint(List<Throwable> chain) {
+		StringBuilder fingerprint = new StringBuilder();
+		for (Throwable cause : chain) {
+			fingerprint.append(cause.getClass().getName());
+			StackTraceElement[] elements = cause.getStackTrace();
+			for (int i = 0; i < elements.length && i < FINGERPRINT_FRAMES; i++) {
+				fingerprint.append('|').append(elements[i].getClassName()).append('.')
+						.append(elements[i].getMethodName()).append(':').append(elements[i].getLineNumber());
+			}
+			fingerprint.append(';');
+		}
+		return fingerprint.toString();
+	}
+
+	/**
+	 * Hashes everything the rendering depends on: all frames of all causes and
+	 * the messages of the causes.
+	 *
+	 * @param chain the failure and its causes
+	 * @return the hex encoded hash
+	 */
+	private static String key(List<Throwable> chain) {
+		StringBuilder key = new StringBuilder();
+		for (int c = 0; c < chain.size(); c++) {
+			key.append(c == 0 ? chain.get(c).getClass().getName() : String.valueOf(chain.get(c))).append('\n');
+			for (StackTraceElement element : chain.get(c).getStackTrace()) {
+				key.append(element).append('\n');
+			}
+		}
+		return TestlinkHashes.sha256(key.toString());
+	}
+
+	private String render(List<Throwable> chain) {
+		StringBuilder result = new StringBuilder();
+		for (int c = 0; c < chain.size(); c++) {
+			if (c > 0) {
+				result.append("Caused by: ").append(chain.get(c)).append(NEWLINE);
+			}
+			StackTraceElement[] elements = chain.get(c).getStackTrace();
+			int kept = 0;
+			int collapsed = 0;
+			for (int i = 0; i < elements.length; i++) {
+				// the top frame is kept even if it belongs to a framework, e.g. an assertion
+				if (i > 0 && isCollapsed(elements[i])) {
+					collapsed++;
+					continue;
+				}
+				appendCollapsed(result, collapsed);
+				collapsed = 0;
+				if (kept == maxFrames) {
+					result.append("\t... ").append(elements.length - i).append(" more").append(NEWLINE);
+					break;
+				}
+				result.append("\tat ").append(elements[i]).append(NEWLINE);
+				kept++;
+			}
+			appendCollapsed(result, collapsed);
+		}
+		return result.toString();
+	}
+
+	private static void appendCollapsed(StringBuilder result, int collapsed) {
+		if (collapsed > 0) {
+			result.append("\t... ").append(collapsed).append(" framework frames").append(NEWLINE);
+		}
+	}
+
+	private boolean isCollapsed(StackTraceElement element) {
+		for (String prefix : collapsePrefixes) {
+			if (element.getClassName().startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
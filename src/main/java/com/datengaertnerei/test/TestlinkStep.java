@@ -1,5 +1,14 @@
 package com.datengaertnerei.test;
 
+import java.util.Arrays;
+
+/**
+ * Result of one test method. Immutable parameters are kept as raw objects and
+ * rendered to text on first access, usually at upload time, so the test
+ * threads only store references. Other parameters may change after the test
+ * method and are rendered right away. Stack traces share their frames with
+ * equal failures.
+ */
 public class TestlinkStep {
   enum TestStatus {
     PASSED,
@@ -7,16 +16,47 @@ public class TestlinkStep {
     BLOCKED;
   }
 
+  /** Duration of a step which was not measured, e.g. a step created by hand. */
+  public static final long NOT_MEASURED = -1;
+
   private String testStepName;
   private String parameters;
+  private Object[] parameterValues;
   private String stackTrace;
+  private TestlinkStackTraces.Trace trace;
   private TestStatus status;
+  private long durationMillis = NOT_MEASURED;
 
   public TestlinkStep(String testStepName, String parameters) {
     this.testStepName = testStepName;
     this.parameters = parameters;
   }
 
+  /**
+   * Creates a step with the parameters of the test method. Parameters are
+   * rendered on demand if all of them are immutable, otherwise immediately in
+   * their current state.
+   *
+   * @param testStepName the test method name
+   * @param parameterValues the test method parameters
+   * @return the step
+   */
+  public static TestlinkStep of(String testStepName, Object[] parameterValues) {
+    TestlinkStep step = new TestlinkStep(testStepName, (String) null);
+    if (Arrays.stream(parameterValues).allMatch(TestlinkStep::isImmutable)) {
+      step.parameterValues = parameterValues.clone();
+    } else {
+      step.parameters = printParameters(parameterValues);
+    }
+    return step;
+  }
+
+  private static boolean isImmutable(Object value) {
+    // boxed primitives only, other numbers like AtomicLong may change
+    return null == value || value instanceof String || value instanceof Boolean || value instanceof Character
+        || value instanceof Enum || value instanceof Number && value.getClass().getName().startsWith("java.lang.");
+  }
+
   public String getTestStepName() {
     return testStepName;
   }
@@ -25,20 +65,55 @@ public class TestlinkStep {
     this.testStepName = testStepName;
   }
 
-  public String getParameters() {
+  public synchronized String getParameters() {
+    if (null == parameters && null != parameterValues) {
+      parameters = printParameters(parameterValues);
+      parameterValues = null;
+    }
     return parameters;
   }
 
-  public void setParameters(String parameters) {
+  public synchronized void setParameters(String parameters) {
     this.parameters = parameters;
+    this.parameterValues = null;
   }
 
-  public String getStackTrace() {
-    return stackTrace;
+  public synchronized String getStackTrace() {
+    return null == trace ? stackTrace : trace.toString();
   }
 
-  public void setStackTrace(String stackTrace) {
+  public synchronized void setStackTrace(String stackTrace) {
     this.stackTrace = stackTrace;
+    this.trace = null;
+  }
+
+  synchronized void setFailure(TestlinkStackTraces.Trace trace) {
+    this.trace = trace;
+    this.stackTrace = null;
+  }
+
+  /**
+   * Provides the fingerprint of the failure, equal for failures with the same
+   * exception types and top frames.
+   *
+   * @return the fingerprint or null if unknown
+   */
+  synchronized String getStackTraceFingerprint() {
+    return null == trace ? null : trace.getFingerprint();
+  }
+
+  /**
+   * Provides the key of the rendered stack trace, equal only for failures with
+   * identical frames and causes.
+   *
+   * @return the key or null if unknown
+   */
+  synchronized String getStackTraceKey() {
+    return null == trace ? null : trace.getKey();
+  }
+
+  synchronized String getFailureMessage() {
+    return null == trace ? null : trace.getMessage();
   }
 
   public TestStatus getStatus() {
@@ -48,4 +123,31 @@ public class TestlinkStep {
   public void setStatus(TestStatus status) {
     this.status = status;
   }
+
+  /**
+   * Provides the duration of the test method.
+   *
+   * @return the duration in milliseconds or {@link #NOT_MEASURED}
+   */
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  public void setDurationMillis(long durationMillis) {
+    this.durationMillis = durationMillis;
+  }
+
+  static String printParameters(Object[] parameters) {
+    StringBuilder result = new StringBuilder();
+    if (parameters.length > 0) {
+      result.append("Parameters:\r\n");
+      for (Object o : parameters) {
+        result.append(null == o ? "null" : o.getClass().getName()).append(": ").append(o);
+      }
+    } else {
+      result.append("No parameters.\r\n");
+    }
+
+    return result.toString();
+  }
 }
@@ -0,0 +1,220 @@
+package com.datengaertnerei.test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientConfig;
+import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
+import org.apache.xmlrpc.client.XmlRpcHttpClientConfig;
+import org.apache.xmlrpc.client.XmlRpcSunHttpTransport;
+import org.apache.xmlrpc.client.XmlRpcSunHttpTransportFactory;
+import org.apache.xmlrpc.client.XmlRpcTransport;
+import org.apache.xmlrpc.client.XmlRpcTransportFactory;
+
+import br.eti.kinoshita.testlinkjavaapi.TestLinkAPI;
+
+/**
+ * Transport settings for the XML-RPC clients talking to TestLink. Connections
+ * are kept alive and reused from the JDK pool, requests and responses may be
+ * gzip compressed and timeouts prevent calls from hanging forever. The
+ * settings are applied to the connections of each client, JVM wide HTTP
+ * properties are left alone.
+ * <p>
+ * The JDK pool size cannot be set per client. It keeps at most
+ * http.maxConnections idle connections per server, 5 by default, further
+ * connections are closed after their request. With more concurrent calls
+ * (TestlinkIntegrationContext.Concurrency) the JVM should be started with a
+ * higher http.maxConnections, otherwise a warning is logged. The pool size of
+ * a replaced transport factory, e.g. the Apache commons-httpclient transport,
+ * is configured by that transport.
+ * <p>
+ * With TestlinkIntegrationContext.ChunkedRequests requests of clients
+ * configured for streaming are sent with chunked transfer encoding while they
+ * are written. This is off by default, as some web servers in front of PHP
+ * reject chunked requests, and the default transport buffers each request to
+ * compute its length.
+ *
+ * @author Jens Dibbern
+ */
+class TestlinkTransport {
+	private static Log log = LogFactory.getLog(TestlinkTransport.class);
+
+	private static final String CFG_TRANSPORT_FACTORY = "TestlinkIntegrationContext.TransportFactory";
+	private static final String CFG_KEEP_ALIVE = "TestlinkIntegrationContext.KeepAlive";
+	private static final String CFG_GZIP_REQUEST = "TestlinkIntegrationContext.GzipRequest";
+	private static final String CFG_GZIP_RESPONSE = "TestlinkIntegrationContext.GzipResponse";
+	private static final String CFG_CONNECT_TIMEOUT = "TestlinkIntegrationContext.ConnectTimeout";
+	private static final String CFG_READ_TIMEOUT = "TestlinkIntegrationContext.ReadTimeout";
+	private static final String CFG_CHUNKED_REQUESTS = "TestlinkIntegrationContext.ChunkedRequests";
+	private static final String JDK_MAX_CONNECTIONS = "http.maxConnections";
+	private static final int DEFAULT_JDK_MAX_CONNECTIONS = 5;
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final String API_CLIENT_FIELD = "xmlRpcClient";
+
+	private final String transportFactory;
+	private final boolean keepAlive;
+	private final boolean gzipRequest;
+	private final boolean gzipResponse;
+	private final int connectTimeout;
+	private final int readTimeout;
+	private final boolean chunkedRequests;
+
+	/**
+	 * Creates new transport settings.
+	 *
+	 * @param transportFactory class name of the XML-RPC transport factory, null
+	 *                         for the default
+	 * @param keepAlive        reuse connections for further requests
+	 * @param gzipRequest      compress requests
+	 * @param gzipResponse     ask for compressed responses
+	 * @param connectTimeout   connect timeout in milliseconds, 0 for none
+	 * @param readTimeout      read timeout in milliseconds, 0 for none
+	 * @param chunkedRequests  stream requests of streaming clients with chunked
+	 *                         transfer encoding, the server has to accept it
+	 */
+	TestlinkTransport(String transportFactory, boolean keepAlive, boolean gzipRequest, boolean gzipResponse,
+			int connectTimeout, int readTimeout, boolean chunkedRequests) {
+		this.transportFactory = transportFactory;
+		this.keepAlive = keepAlive;
+		this.gzipRequest = gzipRequest;
+		this.gzipResponse = gzipResponse;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.chunkedRequests = chunkedRequests;
+	}
+
+	/**
+	 * Creates the transport configured by system properties.
+	 *
+	 * @return the transport settings
+	 */
+	static TestlinkTransport fromSystemProperties() {
+		return new TestlinkTransport(System.getProperty(CFG_TRANSPORT_FACTORY),
+				Boolean.parseBoolean(System.getProperty(CFG_KEEP_ALIVE, Boolean.TRUE.toString())),
+				Boolean.parseBoolean(System.getProperty(CFG_GZIP_REQUEST, Boolean.FALSE.toString())),
+				Boolean.parseBoolean(System.getProperty(CFG_GZIP_RESPONSE, Boolean.TRUE.toString())),
+				Integer.getInteger(CFG_CONNECT_TIMEOUT, 0), Integer.getInteger(CFG_READ_TIMEOUT, 0),
+				Boolean.getBoolean(CFG_CHUNKED_REQUESTS));
+	}
+
+	/**
+	 * Warns if the JDK keeps fewer idle connections than calls run concurrently,
+	 * so connections would be opened and closed again all the time.
+	 *
+	 * @param concurrency the maximum number of concurrent calls
+	 */
+	void checkConnectionPool(int concurrency) {
+		int maxConnections = Integer.getInteger(JDK_MAX_CONNECTIONS, DEFAULT_JDK_MAX_CONNECTIONS);
+		if (keepAlive && null == transportFactory && maxConnections < concurrency) {
+			log.warn(new StringBuilder("JDK keeps ").append(maxConnections).append(" idle connections for ")
+					.append(concurrency).append(" concurrent calls, start the JVM with -D")
+					.append(JDK_MAX_CONNECTIONS).append('=').append(concurrency).append(" to reuse them"));
+		}
+	}
+
+	/**
+	 * Checks if requests of streaming clients are written to the connection
+	 * while they are encoded. Otherwise each request is buffered in memory as a
+	 * whole.
+	 *
+	 * @return true if requests are streamed
+	 */
+	boolean isStreaming() {
+		return chunkedRequests && null == transportFactory;
+	}
+
+	/**
+	 * Applies the settings to the XML-RPC client used internally by the TestLink
+	 * API. The client is not accessible by the API, if it cannot be found the
+	 * default transport is kept. The API pings TestLink on creation, before the
+	 * settings can be applied.
+	 *
+	 * @param remoteApi the TestLink API
+	 */
+	void install(TestLinkAPI remoteApi) {
+		try {
+			Field clientField = TestLinkAPI.class.getDeclaredField(API_CLIENT_FIELD);
+			clientField.setAccessible(true);
+			configure((XmlRpcClient) clientField.get(remoteApi), false);
+		} catch (ReflectiveOperationException | RuntimeException installException) {
+			log.warn("Cannot configure TestLink API transport, using defaults.", installException);
+		}
+	}
+
+	/**
+	 * Applies the settings to an XML-RPC client.
+	 *
+	 * @param client    the client
+	 * @param streaming stream requests if possible, for large requests like
+	 *                  attachments and batches
+	 */
+	void configure(XmlRpcClient client, boolean streaming) {
+		XmlRpcClientConfig clientConfig = client.getClientConfig();
+		if (clientConfig instanceof XmlRpcClientConfigImpl) {
+			XmlRpcClientConfigImpl config = (XmlRpcClientConfigImpl) clientConfig;
+			config.setGzipCompressing(gzipRequest);
+			config.setGzipRequesting(gzipResponse);
+			config.setConnectionTimeout(connectTimeout);
+			config.setReplyTimeout(readTimeout);
+		}
+
+		if (null != transportFactory) {
+			try {
+				client.setTransportFactory((XmlRpcTransportFactory) Class.forName(transportFactory)
+						.getConstructor(XmlRpcClient.class).newInstance(client));
+			} catch (ReflectiveOperationException | ClassCastException factoryException) {
+				log.warn("Cannot use transport factory " + transportFactory + ", using default.", factoryException);
+			}
+		} else {
+			client.setTransportFactory(new ConnectionTransportFactory(client, streaming && chunkedRequests));
+		}
+	}
+
+	/**
+	 * JDK HTTP transport applying timeouts and keep-alive to each connection,
+	 * the plain JDK transport ignores the timeouts of the client config.
+	 * Requests may be written in chunks instead of buffering them for the
+	 * content length.
+	 */
+	private class ConnectionTransportFactory extends XmlRpcSunHttpTransportFactory {
+		private final XmlRpcClient client;
+		private final boolean chunked;
+
+		ConnectionTransportFactory(XmlRpcClient client, boolean chunked) {
+			super(client);
+			this.client = client;
+			this.chunked = chunked;
+		}
+
+		@Override
+		public XmlRpcTransport getTransport() {
+			return new XmlRpcSunHttpTransport(client) {
+				@Override
+				protected URLConnection newURLConnection(URL url) throws IOException {
+					URLConnection connection = super.newURLConnection(url);
+					connection.setConnectTimeout(connectTimeout);
+					connection.setReadTimeout(readTimeout);
+					if (!keepAlive) {
+						connection.setRequestProperty("Connection", "close");
+					}
+					if (chunked && connection instanceof HttpURLConnection) {
+						((HttpURLConnection) connection).setChunkedStreamingMode(CHUNK_SIZE);
+					}
+					return connection;
+				}
+
+				@Override
+				protected boolean isUsingByteArrayOutput(XmlRpcHttpClientConfig config) {
+					// no content length needed with chunked transfer encoding
+					return !chunked && super.isUsingByteArrayOutput(config);
+				}
+			};
+		}
+	}
+}
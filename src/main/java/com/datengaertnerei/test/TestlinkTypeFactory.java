@@ -0,0 +1,97 @@
+package com.datengaertnerei.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Base64;
+
+import org.apache.xmlrpc.common.TypeFactoryImpl;
+import org.apache.xmlrpc.common.XmlRpcController;
+import org.apache.xmlrpc.common.XmlRpcStreamConfig;
+import org.apache.xmlrpc.serializer.TypeSerializer;
+import org.apache.xmlrpc.serializer.TypeSerializerImpl;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * XML-RPC type factory writing attachment content as base64 string while it
+ * is read, so the content is never held in memory as a whole.
+ *
+ * @author Jens Dibbern
+ */
+class TestlinkTypeFactory extends TypeFactoryImpl {
+
+	private static final TypeSerializer ATTACHMENT_SERIALIZER = new AttachmentSerializer();
+
+	TestlinkTypeFactory(XmlRpcController controller) {
+		super(controller);
+	}
+
+	@Override
+	public TypeSerializer getSerializer(XmlRpcStreamConfig config, Object object) throws SAXException {
+		if (object instanceof TestlinkAttachment) {
+			return ATTACHMENT_SERIALIZER;
+		}
+		return super.getSerializer(config, object);
+	}
+
+	/** Writes the attachment content as base64 string value. */
+	private static class AttachmentSerializer extends TypeSerializerImpl {
+
+		@Override
+		public void write(ContentHandler handler, Object object) throws SAXException {
+			TestlinkAttachment attachment = (TestlinkAttachment) object;
+			handler.startElement("", VALUE_TAG, VALUE_TAG, ZERO_ATTRIBUTES);
+			CharacterOutputStream characters = new CharacterOutputStream(handler);
+			try (InputStream content = attachment.openStream();
+					OutputStream encoder = Base64.getEncoder().wrap(characters)) {
+				content.transferTo(encoder);
+			} catch (IOException encodeException) {
+				if (null != characters.failure) {
+					throw characters.failure;
+				}
+				throw new SAXException("Cannot encode attachment " + attachment.getTitle(), encodeException);
+			}
+			handler.endElement("", VALUE_TAG, VALUE_TAG);
+		}
+	}
+
+	/** Passes the ASCII output of the base64 encoder in chunks to the content handler. */
+	private static class CharacterOutputStream extends OutputStream {
+		private final ContentHandler handler;
+		private final char[] chunk = new char[8192];
+		private int length;
+		private SAXException failure;
+
+		CharacterOutputStream(ContentHandler handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (length == chunk.length) {
+				flush();
+			}
+			chunk[length++] = (char) b;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (length == 0) {
+				return;
+			}
+			try {
+				handler.characters(chunk, 0, length);
+				length = 0;
+			} catch (SAXException handlerException) {
+				failure = handlerException;
+				throw new IOException(handlerException);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
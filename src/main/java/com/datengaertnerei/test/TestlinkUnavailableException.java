@@ -0,0 +1,33 @@
+package com.datengaertnerei.test;
+
+import br.eti.kinoshita.testlinkjavaapi.util.TestLinkAPIException;
+
+/**
+ * Signals that TestLink could not be reached, either because a call failed for
+ * network reasons or because calls are suspended after repeated failures.
+ * Results should be kept locally for a later upload.
+ *
+ * @author Jens Dibbern
+ */
+public class TestlinkUnavailableException extends TestLinkAPIException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Creates a new exception.
+	 *
+	 * @param message the error message
+	 */
+	public TestlinkUnavailableException(String message) {
+		super(message);
+	}
+
+	/**
+	 * Creates a new exception.
+	 *
+	 * @param message the error message
+	 * @param cause   the network failure
+	 */
+	public TestlinkUnavailableException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
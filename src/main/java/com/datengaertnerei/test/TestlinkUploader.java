@@ -0,0 +1,480 @@
+package com.datengaertnerei.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import br.eti.kinoshita.testlinkjavaapi.constants.ExecutionStatus;
+import br.eti.kinoshita.testlinkjavaapi.constants.ExecutionType;
+import br.eti.kinoshita.testlinkjavaapi.model.TestCase;
+import br.eti.kinoshita.testlinkjavaapi.model.TestCaseStep;
+import br.eti.kinoshita.testlinkjavaapi.model.TestSuite;
+import br.eti.kinoshita.testlinkjavaapi.util.TestLinkAPIException;
+
+/**
+ * Staged upload pipeline for collected test cases. Independent test cases are
+ * processed concurrently on the executor of the integration context, while
+ * each test case passes the stages create, add to plan, report result and
+ * attach in order. New versions of test cases replace the assigned version in
+ * the execution plan.
+ * <p>
+ * With TestlinkIntegrationListener.ReplacePlan a new version requires a new
+ * execution plan instead, the decision is taken after all test cases are
+ * created and before any result is reported. In incremental mode results are
+ * reported as soon as a test case is created. If a test case requires a new
+ * execution plan, reporting is deferred and all test cases of the run are
+ * reported again to the new plan on finish.
+ * <p>
+ * In resume mode (TestlinkIntegrationListener.Resume) test cases which already
+ * have an execution with the same status in the build are not reported again,
+ * so a failed upload can be repeated at the cost of the missing test cases.
+ * <p>
+ * At most TestlinkIntegrationListener.MaxCasesInFlight test cases are created
+ * or reported at a time, further submissions wait. Created test cases are only
+ * kept until finish if results are reported on finish or the plan may be
+ * replaced.
+ *
+ * @author Jens Dibbern
+ */
+public class TestlinkUploader {
+	private static Log log = LogFactory.getLog(TestlinkUploader.class);
+
+	private static final int DEFAULT_MAX_NOTES_SIZE = 60000;
+	private static final int DEFAULT_MAX_CASES_IN_FLIGHT = 1000;
+	private static final String PROTOCOL_FILE_NAME = "execution-protocol.txt.gz";
+	private static final String NOT_FOUND = "does not exist";
+
+	private final TestlinkIntegrationContext tlContext;
+	private final TestlinkProject tlProject;
+	private final TestSuite suite;
+	private final Executor executor;
+	private final boolean incremental;
+	private final TestlinkJournal journal;
+	private final TestlinkAttachmentProcessor attachmentProcessor;
+	private final int maxNotesSize;
+	private final boolean attachProtocol;
+	private final boolean resume;
+	private final boolean replacePlan;
+	private final Map<Integer, Integer> existingVersions = new HashMap<>();
+	/** Status of the last execution in the build by test case id, resume mode only. */
+	private final Map<Integer, ExecutionStatus> existingResults = new HashMap<>();
+	private final LongAdder resumedCases = new LongAdder();
+	/** Limits the test cases submitted and not yet created or reported. */
+	private final Semaphore casesInFlight;
+	/** Uploads in progress, removed on completion. */
+	private final Set<CompletableFuture<Void>> uploads = ConcurrentHashMap.newKeySet();
+	/** Created test cases to be reported on finish, or again to a new plan. */
+	private final Queue<PreparedCase> preparedCases = new ConcurrentLinkedQueue<>();
+	private final Set<TestlinkCase> pendingCases = ConcurrentHashMap.newKeySet();
+	private volatile boolean newPlan;
+
+	/** Created TestLink test case with its execution result. */
+	private static class PreparedCase {
+		private final TestlinkCase tlCase;
+		private final TestCase testCase;
+		private final ExecutionStatus status;
+		private final String protocol;
+		/** Compressed full protocol if the notes are truncated, or null. */
+		private final ByteBuffer fullProtocol;
+
+		PreparedCase(TestlinkCase tlCase, TestCase testCase, ExecutionStatus status, String protocol,
+				ByteBuffer fullProtocol) {
+			this.tlCase = tlCase;
+			this.testCase = testCase;
+			this.status = status;
+			this.protocol = protocol;
+			this.fullProtocol = fullProtocol;
+		}
+	}
+
+	/**
+	 * Creates a new upload pipeline.
+	 *
+	 * @param tlContext   the TestLink integration context
+	 * @param tlProject   the project with plan and build to report to
+	 * @param suite       the TestLink suite for new test cases
+	 * @param incremental report results right after creation of each test case
+	 * @param journal     optional journal to mark uploaded test cases, may be null
+	 */
+	public TestlinkUploader(TestlinkIntegrationContext tlContext, TestlinkProject tlProject, TestSuite suite,
+			boolean incremental, TestlinkJournal journal) {
+		this(tlContext, tlProject, suite, incremental, journal, TestlinkAttachmentPolicy.fromSystemProperties());
+	}
+
+	/**
+	 * Creates a new upload pipeline with the given attachment processor.
+	 *
+	 * @param tlContext           the TestLink integration context
+	 * @param tlProject           the project with plan and build to report to
+	 * @param suite               the TestLink suite for new test cases
+	 * @param incremental         report results right after creation of each test
+	 *                            case
+	 * @param journal             optional journal to mark uploaded test cases, may
+	 *                            be null
+	 * @param attachmentProcessor optional processor for attachments, may be null
+	 */
+	public TestlinkUploader(TestlinkIntegrationContext tlContext, TestlinkProject tlProject, TestSuite suite,
+			boolean incremental, TestlinkJournal journal, TestlinkAttachmentProcessor attachmentProcessor) {
+		this.tlContext = tlContext;
+		this.tlProject = tlProject;
+		this.suite = suite;
+		this.incremental = incremental;
+		this.journal = journal;
+		this.attachmentProcessor = attachmentProcessor;
+		this.maxNotesSize = Integer.getInteger("TestlinkIntegrationListener.MaxNotesSize", DEFAULT_MAX_NOTES_SIZE);
+		this.attachProtocol = Boolean.getBoolean("TestlinkIntegrationListener.ProtocolAttachment");
+		this.resume = Boolean.getBoolean("TestlinkIntegrationListener.Resume");
+		this.replacePlan = Boolean.getBoolean("TestlinkIntegrationListener.ReplacePlan");
+		this.casesInFlight = new Semaphore(
+				Integer.getInteger("TestlinkIntegrationListener.MaxCasesInFlight", DEFAULT_MAX_CASES_IN_FLIGHT));
+		this.executor = tlContext.getExecutor();
+
+		for (TestCase tc : tlContext.getTestCases(tlProject.getPlan(), tlProject.getBuild())) {
+			existingVersions.merge(tc.getId(), tc.getVersion(), Math::max);
+			if (resume && null != tc.getExecutionStatus() && ExecutionStatus.NOT_RUN != tc.getExecutionStatus()) {
+				existingResults.put(tc.getId(), tc.getExecutionStatus());
+			}
+		}
+	}
+
+	/**
+	 * Starts the creation of the TestLink test case in the background. May be
+	 * called concurrently, waits while the maximum number of test cases is in
+	 * flight.
+	 *
+	 * @param tlCase the collected test case
+	 */
+	public void submit(TestlinkCase tlCase) {
+		casesInFlight.acquireUninterruptibly();
+		pendingCases.add(tlCase);
+		CompletableFuture<Void> upload = CompletableFuture.supplyAsync(() -> createTestCase(tlCase), executor)
+				.exceptionally(ex -> {
+					log.error("Could not create test case " + tlCase.getTestCaseName(), ex);
+					return null;
+				}).thenCompose(preparedCase -> {
+					if (null == preparedCase) {
+						return CompletableFuture.completedFuture(null);
+					}
+					// all results are needed again if the plan is replaced later on
+					if (!incremental || replacePlan) {
+						preparedCases.add(preparedCase);
+					}
+					if (!incremental || requiresNewPlan(preparedCase)) {
+						return CompletableFuture.completedFuture(null);
+					}
+					return reportAsync(preparedCase);
+				});
+		uploads.add(upload);
+		upload.whenComplete((result, ex) -> {
+			uploads.remove(upload);
+			casesInFlight.release();
+		});
+	}
+
+	/**
+	 * Waits for all test cases to be created, replaces the plan if needed and
+	 * reports all remaining results concurrently. Returns when all uploads are
+	 * done.
+	 */
+	public void finish() {
+		CompletableFuture.allOf(uploads.toArray(new CompletableFuture<?>[0])).join();
+
+		if (!incremental) {
+			preparedCases.forEach(this::requiresNewPlan);
+		}
+
+		if (newPlan) {
+			tlProject.setPlan(tlContext.createPlan(tlProject.getProject()));
+			tlProject.setBuild(tlContext.getBuild(tlProject.getPlan(), tlProject.getBuild().getName()));
+		}
+
+		// in incremental mode everything has been reported already, unless the plan changed
+		if (newPlan || !incremental) {
+			CompletableFuture
+					.allOf(preparedCases.stream().map(this::reportAsync).toArray(CompletableFuture[]::new)).join();
+		}
+
+		if (resumedCases.sum() > 0) {
+			log.info(resumedCases.sum() + " test cases reported to build " + tlProject.getBuild().getName()
+					+ " before, skipped");
+		}
+		if (attachmentProcessor instanceof TestlinkAttachmentPolicy) {
+			((TestlinkAttachmentPolicy) attachmentProcessor).logSummary();
+		}
+		tlContext.saveCache();
+	}
+
+	/**
+	 * Provides the submitted test cases which have not been uploaded
+	 * completely, e.g. because TestLink became unavailable.
+	 *
+	 * @return the test cases not uploaded
+	 */
+	public Collection<TestlinkCase> getPendingCases() {
+		return new ArrayList<>(pendingCases);
+	}
+
+	/**
+	 * Checks if the test case is a new version of an already assigned test case,
+	 * if plans are replaced on new versions. Once a new plan is required, no
+	 * further results are reported to the current plan.
+	 *
+	 * @param preparedCase the created test case
+	 * @return true if a new plan is required
+	 */
+	private boolean requiresNewPlan(PreparedCase preparedCase) {
+		Integer existingVersion = existingVersions.get(preparedCase.testCase.getId());
+		if (replacePlan && null != existingVersion && preparedCase.testCase.getVersion() > existingVersion) {
+			newPlan = true; // new testcase version of already assigned test - new test plan needed
+		}
+		return newPlan;
+	}
+
+	/**
+	 * Assigns the test case to the plan, reports its result and uploads its
+	 * attachments. Plan assignment and result are sent in batches with other
+	 * test cases if the integration context batches calls.
+	 *
+	 * @param preparedCase the created test case
+	 * @return completed when the test case is uploaded
+	 */
+	private CompletableFuture<Void> reportAsync(PreparedCase preparedCase) {
+		if (isReported(preparedCase)) {
+			resumedCases.increment();
+			uploaded(preparedCase);
+			return CompletableFuture.completedFuture(null);
+		}
+		return reportResult(preparedCase).handle((executionId, ex) -> {
+			if (null == ex) {
+				return CompletableFuture.completedFuture(executionId);
+			}
+			Throwable cause = ex instanceof CompletionException && null != ex.getCause() ? ex.getCause() : ex;
+			if (!isStaleId(cause)) {
+				return CompletableFuture.<Integer>failedFuture(cause);
+			}
+			// the test case id may come from an outdated metadata cache, resolve it again once
+			log.info("Reporting " + preparedCase.tlCase.getTestCaseName() + " failed, retrying without cache: "
+					+ cause.getMessage());
+			tlContext.invalidateTestCase(preparedCase.tlCase.getTestCaseName(), suite);
+			return CompletableFuture.supplyAsync(() -> createTestCase(preparedCase.tlCase), executor)
+					.thenCompose(this::reportResult);
+		}).thenCompose(Function.identity())
+				.thenAcceptAsync(executionId -> uploadAttachments(preparedCase, executionId), executor)
+				.exceptionally(ex -> {
+					log.error("Could not report test case " + preparedCase.testCase.getName(), ex);
+					return null;
+				});
+	}
+
+	/**
+	 * Checks if a failure is caused by an unknown id, which happens if a cached
+	 * test case was deleted in TestLink. Other failures are not retried, the
+	 * result may have been stored already.
+	 *
+	 * @param cause the failure of the report
+	 * @return true if the test case should be resolved again
+	 */
+	private static boolean isStaleId(Throwable cause) {
+		return cause instanceof TestLinkAPIException && !(cause instanceof TestlinkUnavailableException)
+				&& null != cause.getMessage() && cause.getMessage().contains(NOT_FOUND);
+	}
+
+	private PreparedCase createTestCase(TestlinkCase tlCase) {
+		List<TestCaseStep> steps = new ArrayList<>();
+		StringBuilder testCaseExecutionProtocol = new StringBuilder();
+		fillTestStepExecutionProtocol(tlCase, testCaseExecutionProtocol);
+		Map<String, String> stepsByTrace = new HashMap<>();
+		int number = 0;
+		for (TestlinkStep tlStep : tlCase.getSteps()) {
+			TestCaseStep step = createTestCaseStep(tlStep);
+			step.setNumber(number++);
+			steps.add(step);
+			fillTestStepExecutionProtocol(testCaseExecutionProtocol, tlStep, stepsByTrace);
+		}
+
+		TestCase testCase = tlContext.createTestCase(tlCase.getTestCaseName(), suite, tlProject.getProject(), steps);
+		String protocol = testCaseExecutionProtocol.toString();
+		ByteBuffer fullProtocol = null;
+		if (protocol.length() > maxNotesSize) {
+			fullProtocol = attachProtocol ? compress(protocol) : null;
+			protocol = truncate(protocol, null != fullProtocol);
+		}
+		return new PreparedCase(tlCase, testCase, tlCase.getStatus(), protocol, fullProtocol);
+	}
+
+	/**
+	 * Cuts the protocol to the maximum notes size.
+	 *
+	 * @param protocol the full protocol
+	 * @param attached true if the full protocol is attached
+	 * @return the truncated protocol
+	 */
+	private String truncate(String protocol, boolean attached) {
+		int length = maxNotesSize;
+		if (length > 0 && Character.isHighSurrogate(protocol.charAt(length - 1))) {
+			length--;
+		}
+		return new StringBuilder(length + 100).append(protocol, 0, length).append(System.lineSeparator())
+				.append("... ").append(protocol.length() - length).append(" characters truncated")
+				.append(attached ? ", see " + PROTOCOL_FILE_NAME : "").toString();
+	}
+
+	private static ByteBuffer compress(String protocol) {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+			gzip.write(protocol.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException compressionException) {
+			log.warn("Cannot compress execution protocol.", compressionException);
+			return null;
+		}
+		return ByteBuffer.wrap(compressed.toByteArray());
+	}
+
+	private void uploadAttachments(PreparedCase preparedCase, Integer executionId) {
+		if (null != preparedCase.fullProtocol) {
+			tlContext.saveAttachment(executionId,
+					TestlinkAttachment.of(PROTOCOL_FILE_NAME, preparedCase.fullProtocol, "application/gzip"));
+		}
+		for (TestlinkAttachment attachment : uniqueAttachments(preparedCase.tlCase.getAttachments())) {
+			TestlinkAttachment processedAttachment = processAttachment(attachment);
+			if (null == processedAttachment) {
+				continue;
+			}
+			try {
+				tlContext.saveAttachment(executionId, processedAttachment);
+			} finally {
+				if (processedAttachment != attachment) {
+					attachmentProcessor.release(processedAttachment);
+				}
+			}
+		}
+		uploaded(preparedCase);
+	}
+
+	/**
+	 * Checks if the result of the test case is in the build already. Results of
+	 * other versions and of the previous plan do not count.
+	 *
+	 * @param preparedCase the created test case
+	 * @return true if an execution with the same status exists
+	 */
+	private boolean isReported(PreparedCase preparedCase) {
+		Integer id = preparedCase.testCase.getId();
+		return !newPlan && null != preparedCase.status && preparedCase.status == existingResults.get(id)
+				&& preparedCase.testCase.getVersion().equals(existingVersions.get(id));
+	}
+
+	private void uploaded(PreparedCase preparedCase) {
+		if (null != journal) {
+			journal.uploaded(preparedCase.tlCase.getTestCaseName());
+		}
+		pendingCases.remove(preparedCase.tlCase);
+	}
+
+	private CompletableFuture<Integer> reportResult(PreparedCase preparedCase) {
+		return tlContext
+				.addTestCaseToPlanAsync(preparedCase.testCase, tlProject.getPlan(), tlProject.getBuild(),
+						tlProject.getProject())
+				.thenCompose(assigned -> tlContext.setTestResultAsync(preparedCase.testCase, tlProject.getPlan(),
+						tlProject.getBuild(), preparedCase.status, preparedCase.protocol, null));
+	}
+
+	/**
+	 * Removes duplicate attachments of an execution, e.g. the same screenshot
+	 * provided for several test methods.
+	 *
+	 * @param attachments all attachments of the test case
+	 * @return the attachments with distinct content
+	 */
+	private Collection<TestlinkAttachment> uniqueAttachments(List<TestlinkAttachment> attachments) {
+		Map<TestlinkAttachment, Boolean> distinctObjects = new IdentityHashMap<>();
+		Map<String, TestlinkAttachment> distinctContent = new LinkedHashMap<>();
+		for (TestlinkAttachment attachment : attachments) {
+			if (null != distinctObjects.put(attachment, Boolean.TRUE)) {
+				continue;
+			}
+			String key;
+			try {
+				key = attachment.getContentHash();
+			} catch (IOException hashException) {
+				log.warn("Cannot hash attachment " + attachment.getTitle(), hashException);
+				key = attachment.getTitle() + '@' + System.identityHashCode(attachment);
+			}
+			distinctContent.putIfAbsent(key, attachment);
+		}
+		return distinctContent.values();
+	}
+
+	private TestlinkAttachment processAttachment(TestlinkAttachment attachment) {
+		if (null == attachmentProcessor) {
+			return attachment;
+		}
+		try {
+			return attachmentProcessor.process(attachment);
+		} catch (IOException | RuntimeException processingException) {
+			log.warn("Cannot process attachment " + attachment.getTitle() + ", uploading original.",
+					processingException);
+			return attachment;
+		}
+	}
+
+	static void fillTestStepExecutionProtocol(TestlinkCase tlCase, StringBuilder testCaseExecutionProtocol) {
+		testCaseExecutionProtocol.append(tlCase.getTestCaseName()).append(": ").append(tlCase.getDuration())
+				.append(System.lineSeparator());
+	}
+
+	/**
+	 * Appends the protocol of a step. A stack trace already contained in the
+	 * protocol is replaced by a reference to the first step with it.
+	 *
+	 * @param testCaseExecutionProtocol the protocol of the test case
+	 * @param tlStep                    the step
+	 * @param stepsByTrace              the first step name per stack trace key
+	 *                                  in this protocol
+	 */
+	static void fillTestStepExecutionProtocol(StringBuilder testCaseExecutionProtocol, TestlinkStep tlStep,
+			Map<String, String> stepsByTrace) {
+		testCaseExecutionProtocol.append(tlStep.getTestStepName()).append(": ").append(tlStep.getStatus())
+				.append(System.lineSeparator()).append(System.lineSeparator()).append("Parameters:")
+				.append(System.lineSeparator()).append(tlStep.getParameters()).append(System.lineSeparator());
+		String traceKey = tlStep.getStackTraceKey();
+		String firstStep = null == traceKey ? null : stepsByTrace.putIfAbsent(traceKey, tlStep.getTestStepName());
+		if (null != firstStep) {
+			testCaseExecutionProtocol.append(tlStep.getFailureMessage()).append(System.lineSeparator())
+					.append("\tsame stack trace as ").append(firstStep).append(System.lineSeparator());
+		} else {
+			testCaseExecutionProtocol.append(tlStep.getStackTrace());
+		}
+	}
+
+	static TestCaseStep createTestCaseStep(TestlinkStep tlStep) {
+		TestCaseStep result = new TestCaseStep();
+		result.setActions("Execute method " + tlStep.getTestStepName());
+		result.setExpectedResults("Test runs successfully");
+		result.setExecutionType(ExecutionType.AUTOMATED);
+		return result;
+	}
+}
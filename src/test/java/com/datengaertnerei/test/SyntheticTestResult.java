@@ -0,0 +1,118 @@
+package com.datengaertnerei.test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.IClass;
+import org.testng.ISuite;
+import org.testng.ITestClass;
+import org.testng.ITestContext;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+
+/**
+ * Creates TestNG results and contexts without running tests, for benchmarks and load tests
+ * of the listener.
+ */
+public final class SyntheticTestResult {
+
+  private SyntheticTestResult() {}
+
+  /**
+   * Creates a synthetic test result.
+   *
+   * @param className the test class name
+   * @param instanceName the test instance name, the TestLink test case
+   * @param methodName the test method name, the TestLink test step
+   * @param parameters the test method parameters
+   * @param throwable the failure or null
+   * @param startMillis the start time
+   * @param endMillis the end time
+   * @return the test result
+   */
+  public static ITestResult create(String className, String instanceName, String methodName,
+      Object[] parameters, Throwable throwable, long startMillis, long endMillis) {
+    Map<String, Object> classValues = new HashMap<>();
+    classValues.put("getName", className);
+    Map<String, Object> methodValues = new HashMap<>();
+    methodValues.put("getMethodName", methodName);
+    Map<String, Object> resultValues = new HashMap<>();
+    resultValues.put("getTestClass", proxy(IClass.class, classValues));
+    resultValues.put("getMethod", proxy(ITestNGMethod.class, methodValues));
+    resultValues.put("getInstanceName", instanceName);
+    resultValues.put("getName", methodName);
+    resultValues.put("getParameters", parameters);
+    resultValues.put("getThrowable", throwable);
+    resultValues.put("getStartMillis", startMillis);
+    resultValues.put("getEndMillis", endMillis);
+    resultValues.put("getStatus", null == throwable ? ITestResult.SUCCESS : ITestResult.FAILURE);
+    return proxy(ITestResult.class, resultValues);
+  }
+
+  /**
+   * Creates a synthetic test context.
+   *
+   * @param suiteName the test suite name
+   * @param name the test context name
+   * @return the test context
+   */
+  public static ITestContext context(String suiteName, String name) {
+    Map<String, Object> suiteValues = new HashMap<>();
+    suiteValues.put("getName", suiteName);
+    Map<String, Object> contextValues = new HashMap<>();
+    contextValues.put("getSuite", proxy(ISuite.class, suiteValues));
+    contextValues.put("getName", name);
+    return proxy(ITestContext.class, contextValues);
+  }
+
+  /**
+   * Creates a synthetic test class.
+   *
+   * @param className the test class name
+   * @return the test class
+   */
+  public static ITestClass testClass(String className) {
+    Map<String, Object> classValues = new HashMap<>();
+    classValues.put("getName", className);
+    return proxy(ITestClass.class, classValues);
+  }
+
+  private static <T> T proxy(Class<T> type, Map<String, Object> values) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+        (proxy, method, args) -> {
+          if (values.containsKey(method.getName())) {
+            return values.get(method.getName());
+          }
+          switch (method.getName()) {
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            case "toString":
+              return type.getSimpleName() + values;
+            default:
+              return defaultValue(method.getReturnType());
+          }
+        }));
+  }
+
+  private static Object defaultValue(Class<?> returnType) {
+    if (returnType == boolean.class) {
+      return false;
+    }
+    if (returnType == int.class) {
+      return 0;
+    }
+    if (returnType == long.class) {
+      return 0L;
+    }
+    if (returnType == float.class) {
+      return 0f;
+    }
+    if (returnType == double.class) {
+      return 0d;
+    }
+    return null;
+  }
+}
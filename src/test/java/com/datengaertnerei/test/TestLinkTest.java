@@ -31,8 +31,8 @@ public class TestLinkTest implements ContainsAttachmentsTestCase {
   @Test
   public void testCase() {
     TestlinkCase testCase = new TestlinkCase("NewTestCase");
-    testCase.setDuration("1 Min.");
-    testCase.setStatus(ExecutionStatus.PASSED);
+    testCase.addDuration(60000);
+    testCase.updateStatus(ExecutionStatus.PASSED);
   }
   
   @Test
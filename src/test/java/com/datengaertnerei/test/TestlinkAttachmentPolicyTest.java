@@ -0,0 +1,65 @@
+package com.datengaertnerei.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.annotations.Test;
+
+public class TestlinkAttachmentPolicyTest {
+
+  @Test
+  public void testPolicy() throws IOException {
+    TestlinkAttachmentPolicy policy =
+        new TestlinkAttachmentPolicy("image/*=maxdim:8,jpeg:0.5;text/*=gzip;*=maxsize:4");
+
+    Path png = Files.createTempFile("test", ".png");
+    try (InputStream image = ClassLoader.getSystemResourceAsStream("test.png")) {
+      Files.copy(image, png, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+    }
+    TestlinkAttachment jpeg = policy.process(TestlinkAttachment.of(png, "image/png"));
+    assertEquals(jpeg.getContentType(), "image/jpeg");
+    assertTrue(jpeg.getFileName().endsWith(".jpg"));
+    policy.release(jpeg);
+    assertFalse(Files.exists(jpeg.getFile()));
+
+    // no scaling needed, the original is kept
+    TestlinkAttachment original = TestlinkAttachment.of(png, "image/png");
+    assertSame(new TestlinkAttachmentPolicy("image/*=maxdim:100000").process(original), original);
+
+    byte[] log = "line\nline\nline\nline\nline\nline\nline\nline\n".getBytes(StandardCharsets.UTF_8);
+    TestlinkAttachment gzip = policy.process(TestlinkAttachment.of("test.log", ByteBuffer.wrap(log), "text/plain"));
+    assertEquals(gzip.getFileName(), "test.log.gz");
+    policy.release(gzip);
+    assertFalse(Files.exists(gzip.getFile()));
+
+    assertNull(policy.process(TestlinkAttachment.of("big.bin", ByteBuffer.allocate(5), "application/octet-stream")));
+    TestlinkAttachment small = TestlinkAttachment.of("small.bin", ByteBuffer.allocate(4), "application/octet-stream");
+    assertSame(policy.process(small), small);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testMissingValue() {
+    new TestlinkAttachmentPolicy("*=maxsize");
+  }
+
+  @Test
+  public void testInvalidPolicyProperty() {
+    System.setProperty("TestlinkIntegrationListener.AttachmentPolicy", "image/*=maxdim:large");
+    try {
+      // logged, attachments are uploaded as they are
+      assertNull(TestlinkAttachmentPolicy.fromSystemProperties());
+    } finally {
+      System.clearProperty("TestlinkIntegrationListener.AttachmentPolicy");
+    }
+  }
+}
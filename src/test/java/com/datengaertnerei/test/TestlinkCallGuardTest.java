@@ -0,0 +1,90 @@
+package com.datengaertnerei.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
+import org.testng.annotations.Test;
+
+import br.eti.kinoshita.testlinkjavaapi.util.TestLinkAPIException;
+
+public class TestlinkCallGuardTest {
+
+  @Test
+  public void testRetryAndCircuit() {
+    TestlinkCallGuard guard = new TestlinkCallGuard(2, 2, 1, 1, 1000, 3, 60000, new TestlinkMetricsCollector());
+    AtomicInteger calls = new AtomicInteger();
+
+    // idempotent calls are retried until they succeed
+    assertEquals(guard.call("read", true, () -> {
+      if (calls.incrementAndGet() < 3) {
+        throw new TestLinkAPIException("timeout", new IOException("timeout"));
+      }
+      return "ok";
+    }), "ok");
+    assertEquals(calls.get(), 3);
+
+    // TestLink errors are passed on without retry
+    calls.set(0);
+    expectThrows(TestLinkAPIException.class, () -> guard.call("read", true, () -> {
+      calls.incrementAndGet();
+      throw new TestLinkAPIException("does not exist");
+    }));
+    assertEquals(calls.get(), 1);
+
+    // consecutive network failures open the circuit
+    calls.set(0);
+    expectThrows(TestlinkUnavailableException.class, () -> guard.call("write", false, () -> {
+      calls.incrementAndGet();
+      throw new TestLinkAPIException("refused", new IOException("refused"));
+    }));
+    expectThrows(TestlinkUnavailableException.class, () -> guard.call("read", true, () -> {
+      calls.incrementAndGet();
+      throw new TestLinkAPIException("refused", new IOException("refused"));
+    }));
+    expectThrows(TestlinkUnavailableException.class, () -> guard.call("read", true, () -> calls.incrementAndGet()));
+    assertEquals(calls.get(), 3);
+  }
+
+  @Test
+  public void testDroppedConnection() throws IOException {
+    checkNetworkFailure(TestlinkStubServer.Failure.DROP_CONNECTION);
+  }
+
+  @Test
+  public void testStalledResponse() throws IOException {
+    checkNetworkFailure(TestlinkStubServer.Failure.STALL);
+  }
+
+  private static void checkNetworkFailure(TestlinkStubServer.Failure failure) throws IOException {
+    try (TestlinkStubServer server = new TestlinkStubServer(4)) {
+      server.setErrorRate(1, failure);
+      XmlRpcClientConfigImpl config = new XmlRpcClientConfigImpl();
+      config.setServerURL(server.getUrl());
+      XmlRpcClient client = new XmlRpcClient();
+      client.setConfig(config);
+      new TestlinkTransport(null, true, false, false, 1000, 200, false).configure(client, false);
+      TestlinkCallGuard guard = new TestlinkCallGuard(2, 2, 1, 1, 1000, 3, 60000, new TestlinkMetricsCollector());
+      AtomicInteger calls = new AtomicInteger();
+
+      // the idempotent call is retried, the failures open the circuit
+      expectThrows(TestlinkUnavailableException.class, () -> guard.call("tl.ping", true, () -> {
+        calls.incrementAndGet();
+        return client.execute("tl.ping", new Object[0]);
+      }));
+      assertEquals(calls.get(), 3);
+      assertTrue(server.getRequestCount() >= 3);
+
+      expectThrows(TestlinkUnavailableException.class, () -> guard.call("tl.ping", true, () -> {
+        calls.incrementAndGet();
+        return client.execute("tl.ping", new Object[0]);
+      }));
+      assertEquals(calls.get(), 3);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.datengaertnerei.test;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import br.eti.kinoshita.testlinkjavaapi.constants.ExecutionStatus;
+
+public class TestlinkCaseTest {
+
+  @Test
+  public void testConcurrentUpdates() throws InterruptedException {
+    TestlinkCase testCase = new TestlinkCase("ParallelTest");
+    ExecutorService executor = Executors.newFixedThreadPool(64);
+    for (int i = 0; i < 10000; i++) {
+      final int step = i;
+      executor.execute(() -> {
+        testCase.addStep(new TestlinkStep("testMethod" + step, null));
+        testCase.addDuration(2);
+        testCase.updateStatus(step == 5000 ? ExecutionStatus.FAILED : ExecutionStatus.PASSED);
+      });
+    }
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+
+    // no step is lost and a later pass does not hide the failure
+    assertEquals(testCase.getSteps().size(), 10000);
+    assertEquals(testCase.getDurationMillis(), 20000);
+    assertEquals(testCase.getStatus(), ExecutionStatus.FAILED);
+    assertEquals(testCase.getDuration(), "0 hours, 0 mins, 20 seconds");
+  }
+
+  @Test
+  public void testStepParameterCapture() {
+    StringBuilder value = new StringBuilder("before");
+    TestlinkStep step = TestlinkStep.of("testMethod", new Object[] {value, null});
+
+    // mutable parameters are rendered in the state of the test method
+    value.replace(0, value.length(), "after");
+    assertEquals(step.getParameters(), "Parameters:\r\njava.lang.StringBuilder: beforenull: null");
+
+    // immutable parameters are rendered on first access, the array may be reused
+    Object[] parameters = new Object[] {"text", 1};
+    TestlinkStep immutableStep = TestlinkStep.of("testMethod", parameters);
+    parameters[1] = 2;
+    assertEquals(immutableStep.getParameters(), "Parameters:\r\njava.lang.String: textjava.lang.Integer: 1");
+  }
+}
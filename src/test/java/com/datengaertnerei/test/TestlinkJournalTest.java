@@ -0,0 +1,130 @@
+package com.datengaertnerei.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.datengaertnerei.test.TestlinkStep.TestStatus;
+
+import br.eti.kinoshita.testlinkjavaapi.constants.ExecutionStatus;
+
+public class TestlinkJournalTest {
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Path journalFile = Files.createTempDirectory("journal").resolve("results.journal");
+    TestlinkStep step = new TestlinkStep("testMethod", "Parameters:\r\nline\twith tab \\ backslash");
+    step.setStatus(TestStatus.FAILED);
+    try (TestlinkJournal journal = new TestlinkJournal(journalFile)) {
+      journal.run("project", "1.0", "suite");
+      journal.step("SomeTest", step);
+      journal.status("SomeTest", ExecutionStatus.FAILED);
+      journal.duration("SomeTest", 1500);
+      journal.step("OtherTest", new TestlinkStep("otherMethod", null));
+      journal.uploaded("OtherTest");
+    }
+
+    List<TestlinkJournal.Run> runs = TestlinkJournal.read(journalFile);
+    assertEquals(runs.size(), 1);
+    TestlinkJournal.Run run = runs.get(0);
+    assertEquals(run.getBuildName(), "1.0");
+    assertEquals(run.getTestCases().size(), 2);
+    TestlinkCase testCase = run.getTestCases().iterator().next();
+    assertEquals(testCase.getStatus(), ExecutionStatus.FAILED);
+    assertEquals(testCase.getDurationMillis(), 1500);
+    assertEquals(testCase.getSteps().get(0).getParameters(), step.getParameters());
+    assertNull(testCase.getSteps().get(0).getStackTrace());
+    assertFalse(run.isUploaded("SomeTest"));
+    assertTrue(run.isUploaded("OtherTest"));
+  }
+
+  @Test
+  public void testRunsAppendedToOneJournal() throws IOException {
+    Path journalFile = Files.createTempDirectory("journal").resolve("results.journal");
+    for (ExecutionStatus status : new ExecutionStatus[] {ExecutionStatus.PASSED, ExecutionStatus.FAILED}) {
+      try (TestlinkJournal journal = new TestlinkJournal(journalFile)) {
+        journal.run("project", "1.0", "suite");
+        journal.step("SomeTest", new TestlinkStep("testMethod", null));
+        journal.status("SomeTest", status);
+      }
+    }
+    // replay of the first run marks its test case as uploaded
+    try (TestlinkJournal journal = new TestlinkJournal(journalFile)) {
+      journal.resume(TestlinkJournal.read(journalFile).get(0));
+      journal.uploaded("SomeTest");
+    }
+
+    List<TestlinkJournal.Run> runs = TestlinkJournal.read(journalFile);
+    assertEquals(runs.size(), 2);
+    assertTrue(runs.get(0).isUploaded("SomeTest"));
+    // the later run keeps its own steps and is not hidden by the upload mark
+    assertFalse(runs.get(1).isUploaded("SomeTest"));
+    TestlinkCase testCase = runs.get(1).getTestCases().iterator().next();
+    assertEquals(testCase.getSteps().size(), 1);
+    assertEquals(testCase.getStatus(), ExecutionStatus.FAILED);
+  }
+
+  @Test
+  public void testMergeShards() throws IOException {
+    Path dir = Files.createTempDirectory("shards");
+    Path shard1 = dir.resolve("shard-1.journal");
+    Path shard2 = dir.resolve("shard-2.journal");
+    TestlinkStep step = new TestlinkStep("testMethod", null);
+    step.setDurationMillis(100);
+    TestlinkStep repeated = new TestlinkStep("testMethod", null);
+    repeated.setDurationMillis(120);
+    TestlinkStep failed = new TestlinkStep("otherMethod", null);
+    failed.setStatus(TestStatus.FAILED);
+    failed.setDurationMillis(80);
+    try (TestlinkJournal journal = new TestlinkJournal(shard1)) {
+      journal.run("project", "1.0", "suite");
+      journal.step("SomeTest", step);
+      journal.status("SomeTest", ExecutionStatus.PASSED);
+      journal.duration("SomeTest", 100);
+      journal.attachment("SomeTest", "testMethod",
+          TestlinkAttachment.of("some.log", ByteBuffer.wrap(new byte[] {1, 2, 3}), "text/plain"));
+      journal.step("OnlyShard1", new TestlinkStep("testMethod", null));
+      journal.uploaded("OnlyShard1");
+    }
+    try (TestlinkJournal journal = new TestlinkJournal(shard2)) {
+      journal.run("project", "1.0", "suite");
+      journal.step("SomeTest", repeated);
+      journal.step("SomeTest", failed);
+      journal.status("SomeTest", ExecutionStatus.FAILED);
+      journal.duration("SomeTest", 200);
+      journal.run("project", "1.0", "otherSuite");
+      journal.step("OtherTest", new TestlinkStep("testMethod", null));
+    }
+
+    Path merged = dir.resolve("merged.journal");
+    TestlinkJournalReplay.merge(merged, Arrays.asList(shard1, shard2));
+    assertFalse(Files.exists(dir.resolve("merged.journal.tmp")));
+
+    List<TestlinkJournal.Run> runs = TestlinkJournal.read(merged);
+    assertEquals(runs.size(), 2);
+    TestlinkJournal.Run run = runs.get(0);
+    assertEquals(run.getTestCases().size(), 2);
+    TestlinkCase testCase = run.getTestCases().iterator().next();
+    assertEquals(testCase.getTestCaseName(), "SomeTest");
+    assertEquals(testCase.getSteps().size(), 2);
+    assertEquals(testCase.getStatus(), ExecutionStatus.FAILED);
+    // the repeated step of shard 2 does not count
+    assertEquals(testCase.getDurationMillis(), 180);
+    try (InputStream content = testCase.getAttachments().get(0).openStream()) {
+      assertEquals(content.read(new byte[4]), 3);
+    }
+    assertTrue(run.isUploaded("OnlyShard1"));
+    assertEquals(runs.get(1).getSuiteName(), "otherSuite");
+  }
+}
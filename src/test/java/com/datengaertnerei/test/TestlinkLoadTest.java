@@ -0,0 +1,99 @@
+package com.datengaertnerei.test;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.ITestContext;
+import org.testng.Reporter;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Drives the listener with synthetic results against the stub server. Not part
+ * of the default suite, run it with mvn -Pload test. The number of results,
+ * the stub latency and the error rate can be set with the system properties
+ * TestlinkLoadTest.Results, TestlinkLoadTest.Latency and
+ * TestlinkLoadTest.ErrorRate.
+ */
+public class TestlinkLoadTest {
+
+  private static final int STEPS_PER_CASE = 10;
+  private static final int CASES_PER_CLASS = 5;
+
+  private TestlinkStubServer server;
+
+  @BeforeClass
+  public void startServer() throws IOException {
+    server = new TestlinkStubServer(16);
+    server.setLatency(Long.getLong("TestlinkLoadTest.Latency", 5));
+    server.setErrorRate(Double.parseDouble(System.getProperty("TestlinkLoadTest.ErrorRate", "0")));
+
+    // the context is a singleton, so this test needs a JVM of its own
+    System.setProperty("TestlinkIntegrationContext.RemoteURL", server.getUrl().toString());
+    System.setProperty("TestlinkIntegrationContext.APIKey", "stub");
+    System.setProperty("TestlinkIntegrationContext.AutomationUser", "stub");
+    System.setProperty("TestlinkIntegrationContext.CacheDir", "target/no-cache");
+    System.setProperty("TestlinkIntegrationListener.Project", "LoadTest");
+    System.setProperty("TestlinkIntegrationListener.Build", "1.0");
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void stopServer() {
+    if (null != server) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testLoad() {
+    int cases = Integer.getInteger("TestlinkLoadTest.Results", 10000) / STEPS_PER_CASE;
+    runSuite(cases);
+    assertEquals(server.getExecutionCount(), cases);
+  }
+
+  @Test(dependsOnMethods = "testLoad")
+  public void testResume() {
+    int cases = Integer.getInteger("TestlinkLoadTest.Results", 10000) / STEPS_PER_CASE;
+    System.setProperty("TestlinkIntegrationListener.Resume", "true");
+    try {
+      runSuite(cases);
+    } finally {
+      System.clearProperty("TestlinkIntegrationListener.Resume");
+    }
+    // all results are in the build already
+    assertEquals(server.getExecutionCount(), cases);
+  }
+
+  private void runSuite(int cases) {
+    int results = cases * STEPS_PER_CASE;
+    ITestContext context = SyntheticTestResult.context("LoadTestSuite", "LoadTestContext");
+    TestlinkIntegrationListener listener = new TestlinkIntegrationListener();
+
+    long start = System.nanoTime();
+    listener.onStart(context);
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < cases; i++) {
+      String className = "com.example.LoadTest" + i / CASES_PER_CLASS;
+      for (int j = 0; j < STEPS_PER_CASE; j++) {
+        if ((i * STEPS_PER_CASE + j) % 20 == 19) {
+          listener.onTestFailure(SyntheticTestResult.create(className, "Case" + i, "step" + j,
+              new Object[] {j}, new AssertionError("expected [1] but found [2]"), now, now + 5));
+        } else {
+          listener.onTestSuccess(SyntheticTestResult.create(className, "Case" + i, "step" + j,
+              new Object[] {j}, null, now, now + 5));
+        }
+      }
+      if (i % CASES_PER_CLASS == CASES_PER_CLASS - 1) {
+        listener.onAfterClass(SyntheticTestResult.testClass(className));
+      }
+    }
+    listener.onFinish(context);
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    Reporter.log(results + " results in " + cases + " test cases uploaded in " + millis + " ms, "
+        + server.getRequestCount() + " requests: " + server.getCallCounts(), true);
+  }
+}
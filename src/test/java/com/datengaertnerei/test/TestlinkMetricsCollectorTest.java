@@ -0,0 +1,27 @@
+package com.datengaertnerei.test;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class TestlinkMetricsCollectorTest {
+
+  @Test
+  public void testSnapshotResets() {
+    TestlinkMetricsCollector metrics = new TestlinkMetricsCollector();
+    metrics.recordCall("tl.createTestCase", 1000000, false);
+    metrics.recordAttachment(42);
+
+    TestlinkMetricsCollector firstSuite = metrics.snapshot();
+    assertTrue(firstSuite.summary().contains("tl.createTestCase 1x"));
+    assertTrue(firstSuite.summary().contains("attachments 1 (42 bytes)"));
+
+    // the next suite starts over
+    metrics.recordCall("tl.reportTCResult", 1000000, false);
+    TestlinkMetricsCollector secondSuite = metrics.snapshot();
+    assertTrue(secondSuite.summary().contains("tl.reportTCResult 1x"));
+    assertFalse(secondSuite.summary().contains("tl.createTestCase"));
+    assertTrue(secondSuite.summary().contains("attachments 0 (0 bytes)"));
+  }
+}
@@ -0,0 +1,48 @@
+package com.datengaertnerei.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.datengaertnerei.test.TestlinkStep.TestStatus;
+
+import br.eti.kinoshita.testlinkjavaapi.constants.ExecutionStatus;
+
+public class TestlinkResultsImporterTest {
+
+  @Test
+  public void testRead() throws IOException {
+    List<TestlinkCase> testCases = new ArrayList<>();
+    try (InputStream results = getClass().getResourceAsStream("/testng-results.xml")) {
+      new TestlinkResultsImporter(3).read(results, (suiteName, tlCase) -> {
+        assertEquals(suiteName, "ImportSuite");
+        testCases.add(tlCase);
+      });
+    }
+
+    assertEquals(testCases.size(), 2);
+    TestlinkCase first = testCases.get(0);
+    assertEquals(first.getTestCaseName(), "com.example.FirstTest");
+    assertEquals(first.getStatus(), ExecutionStatus.FAILED);
+    assertEquals(first.getDurationMillis(), 30);
+    assertEquals(first.getSteps().size(), 2);
+    TestlinkStep passed = first.getSteps().get(0);
+    assertEquals(passed.getParameters(), TestlinkStep.printParameters(new Object[] {"first value", null}));
+    assertNull(passed.getStackTrace());
+    TestlinkStep failed = first.getSteps().get(1);
+    assertEquals(failed.getStatus(), TestStatus.FAILED);
+    assertTrue(failed.getStackTrace().startsWith("java.lang.AssertionError: expected [1] but found [2]"));
+    assertTrue(failed.getStackTrace().contains("... 2 more lines"));
+
+    TestlinkCase second = testCases.get(1);
+    assertEquals(second.getStatus(), ExecutionStatus.PASSED);
+    assertEquals(second.getSteps().get(0).getStatus(), TestStatus.BLOCKED);
+  }
+}
@@ -0,0 +1,91 @@
+package com.datengaertnerei.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.datengaertnerei.test.TestlinkStep.TestStatus;
+
+public class TestlinkStackTracesTest {
+
+  private static final String NEWLINE = System.lineSeparator();
+
+  @Test
+  public void testFingerprintAndCollapse() {
+    TestlinkStackTraces stackTraces = new TestlinkStackTraces(3, "org.testng.");
+    TestlinkStackTraces.Trace first = stackTraces.of(failure("connection refused", 1));
+    TestlinkStackTraces.Trace repeated = stackTraces.of(failure("connection reset", 1));
+    TestlinkStackTraces.Trace second = stackTraces.of(failure("connection reset", 2));
+    TestlinkStackTraces.Trace other = stackTraces.of(new IllegalStateException("other"));
+
+    // equal top frames group the failures, only identical frames share one rendering
+    assertEquals(first.getFingerprint(), second.getFingerprint());
+    assertNotEquals(first.getFingerprint(), other.getFingerprint());
+    assertEquals(first.getKey(), repeated.getKey());
+    assertNotEquals(first.getKey(), second.getKey());
+    assertEquals(stackTraces.size(), 3);
+    assertTrue(repeated.toString().startsWith("java.lang.IllegalStateException: connection reset" + NEWLINE));
+    assertEquals(first.toString(), "java.lang.IllegalStateException: connection refused" + NEWLINE
+        + "\tat com.example.Service.call(Service.java:10)" + NEWLINE
+        + "\t... 2 framework frames" + NEWLINE
+        + "\tat com.example.ServiceTest.test(ServiceTest.java:20)" + NEWLINE
+        + "\tat com.example.Base.run(Base.java:30)" + NEWLINE
+        + "\t... 1 more" + NEWLINE);
+    assertNull(stackTraces.of(null));
+  }
+
+  @Test
+  public void testCausesAreNotShared() {
+    TestlinkStackTraces stackTraces = new TestlinkStackTraces(40);
+    Throwable first = failure("wrapped", 1);
+    first.initCause(new IllegalArgumentException("first cause"));
+    Throwable second = failure("wrapped", 1);
+    second.initCause(new IllegalArgumentException("second cause"));
+
+    assertTrue(stackTraces.of(first).toString()
+        .contains("Caused by: java.lang.IllegalArgumentException: first cause"));
+    assertTrue(stackTraces.of(second).toString()
+        .contains("Caused by: java.lang.IllegalArgumentException: second cause"));
+  }
+
+  @Test
+  public void testProtocolReferencesRepeatedTrace() {
+    TestlinkStackTraces stackTraces = new TestlinkStackTraces(40);
+    Map<String, String> stepsByTrace = new HashMap<>();
+    StringBuilder protocol = new StringBuilder();
+    for (int i = 0; i < 3; i++) {
+      TestlinkStep step = new TestlinkStep("testMethod" + i, "No parameters.");
+      step.setStatus(TestStatus.FAILED);
+      // the third failure differs below the top frames
+      step.setFailure(stackTraces.of(failure("down " + i, i / 2)));
+      TestlinkUploader.fillTestStepExecutionProtocol(protocol, step, stepsByTrace);
+    }
+
+    String[] renderings = protocol.toString().split("Service\\.call", -1);
+    assertEquals(renderings.length, 3);
+    assertTrue(renderings[1].contains("java.lang.IllegalStateException: down 1" + NEWLINE
+        + "\tsame stack trace as testMethod0" + NEWLINE));
+    assertFalse(protocol.toString().contains("same stack trace as testMethod1"));
+    assertTrue(protocol.toString().contains("Main.java:41"));
+  }
+
+  private static Throwable failure(String message, int lineOffset) {
+    Throwable failure = new IllegalStateException(message);
+    failure.setStackTrace(new StackTraceElement[] {
+      new StackTraceElement("com.example.Service", "call", "Service.java", 10),
+      new StackTraceElement("org.testng.Assert", "fail", "Assert.java", 97),
+      new StackTraceElement("org.testng.internal.Invoker", "invoke", "Invoker.java", 101),
+      new StackTraceElement("com.example.ServiceTest", "test", "ServiceTest.java", 20),
+      new StackTraceElement("com.example.Base", "run", "Base.java", 30),
+      new StackTraceElement("com.example.Main", "main", "Main.java", 40 + lineOffset)
+    });
+    return failure;
+  }
+}
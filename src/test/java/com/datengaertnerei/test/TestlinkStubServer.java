@@ -0,0 +1,781 @@
+package com.datengaertnerei.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for the TestLink XML-RPC API. Implements the methods used
+ * by the integration on an in-memory model, with configurable latency, injected
+ * HTTP errors and network failures and call counters. Supports
+ * system.multicall.
+ */
+public class TestlinkStubServer implements AutoCloseable {
+
+  private static final String NOT_FOUND = "does not exist";
+  private static final long STALL_MILLIS = 10000;
+
+  /** Injected failure of a request. */
+  public enum Failure {
+    /** Answered with HTTP status 503. */
+    UNAVAILABLE,
+    /** The request is read and the connection is closed without response. */
+    DROP_CONNECTION,
+    /** The request is read and the response stalls, longer than a read timeout. */
+    STALL
+  }
+
+  private final HttpServer server;
+  private final ExecutorService threads;
+  private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder attachmentBytes = new LongAdder();
+  private final Map<String, Long> methodLatency = new ConcurrentHashMap<>();
+  private volatile long latencyMillis;
+  private volatile double errorRate;
+  private volatile Failure failure = Failure.UNAVAILABLE;
+
+  private final AtomicInteger ids = new AtomicInteger(1000);
+  private final Map<String, Map<String, Object>> projects = new ConcurrentHashMap<>();
+  private final Map<String, List<Map<String, Object>>> plans = new ConcurrentHashMap<>();
+  private final Map<String, List<Map<String, Object>>> builds = new ConcurrentHashMap<>();
+  private final Map<String, List<Map<String, Object>>> suites = new ConcurrentHashMap<>();
+  private final Map<String, Map<String, StubCase>> cases = new ConcurrentHashMap<>();
+  private final Map<String, StubCase> casesById = new ConcurrentHashMap<>();
+  private final Map<String, Map<String, Integer>> assignments = new ConcurrentHashMap<>();
+  /** Status of the last execution by plan:build:case. */
+  private final Map<String, String> results = new ConcurrentHashMap<>();
+  private final AtomicInteger executions = new AtomicInteger();
+  private final AtomicInteger versionUpdates = new AtomicInteger();
+
+  /** Latest version of a test case. */
+  private static class StubCase {
+    private final String id;
+    private final String name;
+    private final String suiteId;
+    private int version;
+    private List<Object> steps;
+
+    StubCase(String id, String name, String suiteId) {
+      this.id = id;
+      this.name = name;
+      this.suiteId = suiteId;
+    }
+  }
+
+  /**
+   * Starts the server on a free local port.
+   *
+   * @param threadCount the number of request threads
+   * @throws IOException if the server cannot be started
+   */
+  public TestlinkStubServer(int threadCount) throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    threads = Executors.newFixedThreadPool(threadCount);
+    server.setExecutor(threads);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  /**
+   * Provides the XML-RPC URL of the server.
+   *
+   * @return the URL
+   */
+  public URL getUrl() {
+    try {
+      return new URL("http://localhost:" + server.getAddress().getPort() + "/lib/api/xmlrpc/v1/xmlrpc.php");
+    } catch (MalformedURLException urlException) {
+      throw new IllegalStateException(urlException);
+    }
+  }
+
+  /**
+   * Sets the latency added to every call.
+   *
+   * @param millis the latency in milliseconds
+   */
+  public void setLatency(long millis) {
+    latencyMillis = millis;
+  }
+
+  /**
+   * Sets the latency added to calls of one method, instead of the general
+   * latency.
+   *
+   * @param method the XML-RPC method, e.g. tl.reportTCResult
+   * @param millis the latency in milliseconds
+   */
+  public void setLatency(String method, long millis) {
+    methodLatency.put(method, millis);
+  }
+
+  /**
+   * Sets the share of HTTP requests answered with status 503.
+   *
+   * @param errorRate the error rate between 0 and 1
+   */
+  public void setErrorRate(double errorRate) {
+    setErrorRate(errorRate, Failure.UNAVAILABLE);
+  }
+
+  /**
+   * Sets the share of HTTP requests failing the given way.
+   *
+   * @param errorRate the error rate between 0 and 1
+   * @param failure   the kind of failure
+   */
+  public void setErrorRate(double errorRate, Failure failure) {
+    this.failure = failure;
+    this.errorRate = errorRate;
+  }
+
+  /**
+   * Provides the number of calls of a method, calls within multicalls
+   * included.
+   *
+   * @param method the XML-RPC method
+   * @return the number of calls
+   */
+  public long getCallCount(String method) {
+    LongAdder count = calls.get(method);
+    return null == count ? 0 : count.sum();
+  }
+
+  /**
+   * Provides the number of calls per method.
+   *
+   * @return method to number of calls, sorted by method
+   */
+  public Map<String, Long> getCallCounts() {
+    Map<String, Long> result = new TreeMap<>();
+    calls.forEach((method, count) -> result.put(method, count.sum()));
+    return result;
+  }
+
+  /**
+   * Provides the number of HTTP requests, including failed ones.
+   *
+   * @return the number of requests
+   */
+  public long getRequestCount() {
+    return requests.sum();
+  }
+
+  /**
+   * Provides the number of reported test executions.
+   *
+   * @return the number of executions
+   */
+  public int getExecutionCount() {
+    return executions.get();
+  }
+
+  /**
+   * Provides the number of plan assignments changed to another version with
+   * overwrite.
+   *
+   * @return the number of version updates
+   */
+  public int getVersionUpdateCount() {
+    return versionUpdates.get();
+  }
+
+  /**
+   * Provides the decoded size of all uploaded attachments.
+   *
+   * @return the number of bytes
+   */
+  public long getAttachmentBytes() {
+    return attachmentBytes.sum();
+  }
+
+  /**
+   * Deletes a suite with its test cases and their plan assignments, like a
+   * user cleaning up TestLink between runs.
+   *
+   * @param suiteName the name of the suite
+   */
+  public synchronized void deleteSuite(String suiteName) {
+    for (List<Map<String, Object>> projectSuites : suites.values()) {
+      projectSuites.removeIf(suite -> {
+        if (!suiteName.equals(suite.get("name"))) {
+          return false;
+        }
+        Map<String, StubCase> suiteCases = cases.remove(suite.get("id"));
+        if (null != suiteCases) {
+          for (StubCase stubCase : suiteCases.values()) {
+            casesById.remove(stubCase.id);
+            assignments.values().forEach(planCases -> planCases.remove(stubCase.id));
+          }
+        }
+        return true;
+      });
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    threads.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.increment();
+    try {
+      if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+        fail(exchange, failure);
+        return;
+      }
+
+      InputStream body = exchange.getRequestBody();
+      if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+        body = new GZIPInputStream(body);
+      }
+      Document request =
+          DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(body);
+      String method = text(child(request.getDocumentElement(), "methodName"));
+      List<Object> params = new ArrayList<>();
+      Element paramsElement = child(request.getDocumentElement(), "params");
+      if (null != paramsElement) {
+        for (Element param : children(paramsElement, "param")) {
+          params.add(parseValue(child(param, "value")));
+        }
+      }
+
+      Object result;
+      try {
+        result = call(method, params);
+      } catch (IllegalArgumentException faultException) {
+        respond(exchange, fault(faultException.getMessage()));
+        return;
+      }
+      respond(exchange, "<methodResponse><params><param>" + value(result)
+          + "</param></params></methodResponse>");
+    } catch (Exception handlerException) {
+      respond(exchange, fault(String.valueOf(handlerException)));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static void fail(HttpExchange exchange, Failure failure) throws IOException {
+    if (Failure.UNAVAILABLE == failure) {
+      exchange.sendResponseHeaders(503, -1);
+      return;
+    }
+    try (InputStream body = exchange.getRequestBody()) {
+      byte[] buffer = new byte[8192];
+      while (body.read(buffer) >= 0) {
+        // the request is received completely
+      }
+    }
+    if (Failure.STALL == failure) {
+      try {
+        Thread.sleep(STALL_MILLIS);
+      } catch (InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    // closing the exchange without response headers closes the connection
+  }
+
+  private void respond(HttpExchange exchange, String xml) throws IOException {
+    byte[] response = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml)
+        .getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/xml");
+    String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+    if (null != acceptEncoding && acceptEncoding.contains("gzip")) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+        gzip.write(response);
+      }
+      response = compressed.toByteArray();
+      exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+    }
+    exchange.sendResponseHeaders(200, response.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(response);
+    }
+  }
+
+  private static String fault(String message) {
+    return "<methodResponse><fault><value><struct><member><name>faultCode</name><value><int>1"
+        + "</int></value></member><member><name>faultString</name>" + value(message)
+        + "</member></struct></value></fault></methodResponse>";
+  }
+
+  private Object call(String method, List<Object> params) throws InterruptedException {
+    if ("system.multicall".equals(method)) {
+      calls.computeIfAbsent(method, m -> new LongAdder()).increment();
+      List<Object> results = new ArrayList<>();
+      for (Object entry : (List<?>) params.get(0)) {
+        Map<?, ?> call = (Map<?, ?>) entry;
+        try {
+          List<Object> result = new ArrayList<>();
+          result.add(invoke((String) call.get("methodName"), (List<?>) call.get("params")));
+          results.add(result);
+        } catch (IllegalArgumentException faultException) {
+          Map<String, Object> fault = new HashMap<>();
+          fault.put("faultCode", 1);
+          fault.put("faultString", faultException.getMessage());
+          results.add(fault);
+        }
+      }
+      return results;
+    }
+    return invoke(method, params);
+  }
+
+  private Object invoke(String method, List<?> params) throws InterruptedException {
+    calls.computeIfAbsent(method, m -> new LongAdder()).increment();
+    long latency = methodLatency.getOrDefault(method, latencyMillis);
+    if (latency > 0) {
+      Thread.sleep(latency);
+    }
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> args = params.isEmpty() ? new HashMap<>() : (Map<String, Object>) params.get(0);
+    switch (method) {
+      case "tl.checkDevKey":
+      case "tl.doesUserExist":
+        return true;
+      case "tl.ping":
+      case "tl.sayHello":
+        return "Hello!";
+      case "tl.about":
+        return "TestLink stub server";
+      case "tl.getTestProjectByName":
+        return getProject(string(args, "testprojectname"));
+      case "tl.createTestProject":
+        return createProject(string(args, "testprojectname"), string(args, "testcaseprefix"));
+      case "tl.getProjectTestPlans":
+        return plans.getOrDefault(string(args, "testprojectid"), new ArrayList<>());
+      case "tl.createTestPlan":
+        return createPlan(string(args, "testprojectname"), string(args, "testplanname"));
+      case "tl.getBuildsForTestPlan":
+        return getBuilds(string(args, "testplanid"));
+      case "tl.createBuild":
+        return createBuild(string(args, "testplanid"), string(args, "buildname"));
+      case "tl.getFirstLevelTestSuitesForTestProject":
+        return suites.getOrDefault(string(args, "testprojectid"), new ArrayList<>());
+      case "tl.createTestSuite":
+        return createSuite(string(args, "testprojectid"), string(args, "testsuitename"));
+      case "tl.getTestCasesForTestSuite":
+        return getSuiteCases(string(args, "testsuiteid"));
+      case "tl.getTestCasesForTestPlan":
+        return getPlanCases(string(args, "testplanid"), string(args, "buildid"));
+      case "tl.getTestCase":
+        return getCase(string(args, "testcaseid"));
+      case "tl.createTestCase":
+        return createCase(string(args, "testsuiteid"), string(args, "testcasename"), args.get("steps"));
+      case "tl.addTestCaseToTestPlan":
+        return addToPlan(string(args, "testplanid"), string(args, "testcaseid"), string(args, "version"),
+            Boolean.parseBoolean(string(args, "overwrite")));
+      case "tl.reportTCResult":
+        return reportResult(string(args, "testplanid"), string(args, "buildid"), string(args, "testcaseid"),
+            string(args, "status"), Boolean.parseBoolean(string(args, "overwrite")));
+      case "tl.uploadExecutionAttachment":
+        return uploadAttachment(args);
+      default:
+        throw new IllegalArgumentException("server error. requested method " + method + " does not exist.");
+    }
+  }
+
+  private Object getProject(String name) {
+    Map<String, Object> project = projects.get(name);
+    return null == project ? error(7011, "The Test Project with name " + name + " " + NOT_FOUND) : project;
+  }
+
+  private synchronized Object createProject(String name, String prefix) {
+    Map<String, Object> project = new LinkedHashMap<>();
+    project.put("id", nextId());
+    project.put("name", name);
+    project.put("prefix", prefix);
+    project.put("notes", "");
+    project.put("active", "1");
+    project.put("is_public", "1");
+    project.put("tc_counter", "0");
+    project.put("color", "");
+    project.put("option_reqs", "1");
+    project.put("option_priority", "1");
+    project.put("option_automation", "1");
+    Map<String, Object> options = new LinkedHashMap<>();
+    options.put("requirementsEnabled", 1);
+    options.put("testPriorityEnabled", 1);
+    options.put("automationEnabled", 1);
+    options.put("inventoryEnabled", 1);
+    project.put("opt", options);
+    projects.put(name, project);
+    return created(project.get("id"));
+  }
+
+  private synchronized Object createPlan(String projectName, String planName) {
+    Map<String, Object> project = projects.get(projectName);
+    if (null == project) {
+      return error(7011, "The Test Project with name " + projectName + " " + NOT_FOUND);
+    }
+    Map<String, Object> plan = new LinkedHashMap<>();
+    plan.put("id", nextId());
+    plan.put("name", planName);
+    plan.put("notes", "");
+    plan.put("active", "1");
+    plan.put("is_public", "1");
+    plan.put("testproject_id", project.get("id"));
+    plans.computeIfAbsent((String) project.get("id"), p -> new ArrayList<>()).add(plan);
+    builds.put((String) plan.get("id"), new ArrayList<>());
+    return created(plan.get("id"));
+  }
+
+  private Object getBuilds(String planId) {
+    List<Map<String, Object>> planBuilds = builds.get(planId);
+    return null == planBuilds ? error(3000, "Test Plan ID " + planId + " " + NOT_FOUND) : planBuilds;
+  }
+
+  private synchronized Object createBuild(String planId, String buildName) {
+    List<Map<String, Object>> planBuilds = builds.get(planId);
+    if (null == planBuilds) {
+      return error(3000, "Test Plan ID " + planId + " " + NOT_FOUND);
+    }
+    Map<String, Object> build = new LinkedHashMap<>();
+    build.put("id", nextId());
+    build.put("name", buildName);
+    build.put("notes", "");
+    build.put("testplan_id", planId);
+    build.put("active", "1");
+    build.put("is_open", "1");
+    planBuilds.add(build);
+    return created(build.get("id"));
+  }
+
+  private synchronized Object createSuite(String projectId, String suiteName) {
+    Map<String, Object> suite = new LinkedHashMap<>();
+    suite.put("id", nextId());
+    suite.put("name", suiteName);
+    suite.put("parent_id", projectId);
+    suite.put("node_type_id", "2");
+    suite.put("node_order", "0");
+    suite.put("node_table", "testsuites");
+    suites.computeIfAbsent(projectId, p -> new ArrayList<>()).add(suite);
+    cases.put((String) suite.get("id"), new ConcurrentHashMap<>());
+    return created(suite.get("id"));
+  }
+
+  private Object getSuiteCases(String suiteId) {
+    Map<String, StubCase> suiteCases = cases.get(suiteId);
+    if (null == suiteCases) {
+      return error(8000, "Test Suite ID " + suiteId + " " + NOT_FOUND);
+    }
+    List<Object> result = new ArrayList<>();
+    for (StubCase stubCase : suiteCases.values()) {
+      synchronized (stubCase) {
+        result.add(caseDetails(stubCase));
+      }
+    }
+    return result;
+  }
+
+  private Object getPlanCases(String planId, String buildId) {
+    Map<String, Integer> planCases = assignments.get(planId);
+    if (null == planCases || planCases.isEmpty()) {
+      return new ArrayList<>();
+    }
+    Map<String, Object> result = new LinkedHashMap<>();
+    planCases.forEach((caseId, version) -> {
+      Map<String, Object> assignment = new LinkedHashMap<>();
+      assignment.put("tcase_id", caseId);
+      assignment.put("tc_id", caseId);
+      assignment.put("version", String.valueOf(version));
+      assignment.put("platform_id", "0");
+      assignment.put("exec_status", results.getOrDefault(planId + ":" + buildId + ":" + caseId, "n"));
+      assignment.put("execution_type", "2");
+      List<Object> platforms = new ArrayList<>();
+      platforms.add(assignment);
+      result.put(caseId, platforms);
+    });
+    return result;
+  }
+
+  private Object getCase(String caseId) {
+    StubCase stubCase = null == caseId ? null : casesById.get(caseId);
+    if (null == stubCase) {
+      return error(5000, "Test Case ID " + caseId + " " + NOT_FOUND);
+    }
+    synchronized (stubCase) {
+      List<Object> result = new ArrayList<>();
+      result.add(caseDetails(stubCase));
+      return result;
+    }
+  }
+
+  private Object createCase(String suiteId, String name, Object steps) {
+    Map<String, StubCase> suiteCases = cases.get(suiteId);
+    if (null == suiteCases) {
+      return error(8000, "Test Suite ID " + suiteId + " " + NOT_FOUND);
+    }
+    StubCase stubCase = suiteCases.computeIfAbsent(name, n -> new StubCase(nextId(), n, suiteId));
+    casesById.putIfAbsent(stubCase.id, stubCase);
+    synchronized (stubCase) {
+      stubCase.version++;
+      stubCase.steps = steps instanceof List ? new ArrayList<>((List<?>) steps) : new ArrayList<>();
+      Map<String, Object> additionalInfo = new LinkedHashMap<>();
+      additionalInfo.put("id", stubCase.id);
+      additionalInfo.put("external_id", stubCase.id);
+      additionalInfo.put("status_ok", 1);
+      additionalInfo.put("msg", "ok");
+      additionalInfo.put("new_name", "");
+      additionalInfo.put("version_number", stubCase.version);
+      additionalInfo.put("has_duplicate", stubCase.version > 1);
+      List<Object> result = created(stubCase.id);
+      @SuppressWarnings("unchecked")
+      Map<String, Object> response = (Map<String, Object>) result.get(0);
+      response.put("additionalInfo", additionalInfo);
+      return result;
+    }
+  }
+
+  private Object addToPlan(String planId, String caseId, String version, boolean overwrite) {
+    if (!builds.containsKey(planId)) {
+      return error(3000, "Test Plan ID " + planId + " " + NOT_FOUND);
+    }
+    if (!casesById.containsKey(caseId)) {
+      return error(5000, "Test Case ID " + caseId + " " + NOT_FOUND);
+    }
+    Map<String, Integer> planCases = assignments.computeIfAbsent(planId, p -> new ConcurrentHashMap<>());
+    Integer linkedVersion = planCases.get(caseId);
+    if (null != linkedVersion && !linkedVersion.equals(Integer.valueOf(version)) && !overwrite) {
+      return error(3045, "Test Case version number " + version + " <> version already linked ("
+          + linkedVersion + ")");
+    }
+    if (null != linkedVersion && !linkedVersion.equals(Integer.valueOf(version))) {
+      versionUpdates.incrementAndGet();
+    }
+    planCases.put(caseId, Integer.valueOf(version));
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("operation", "addTestCaseToTestPlan");
+    result.put("feature_id", nextId());
+    return result;
+  }
+
+  private Object reportResult(String planId, String buildId, String caseId, String status,
+      boolean overwrite) {
+    Map<String, Integer> planCases = assignments.get(planId);
+    if (null == planCases || !planCases.containsKey(caseId)) {
+      return error(3030, "Test Case ID " + caseId + " is not associated with Test Plan ID " + planId);
+    }
+    // overwrite replaces the last execution of the build
+    if (null == results.put(planId + ":" + buildId + ":" + caseId, status) || !overwrite) {
+      executions.incrementAndGet();
+    }
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("status", true);
+    result.put("operation", "reportTCResult");
+    result.put("overwrite", overwrite);
+    result.put("message", "Success!");
+    result.put("id", nextId());
+    List<Object> response = new ArrayList<>();
+    response.add(result);
+    return response;
+  }
+
+  private Object uploadAttachment(Map<String, Object> args) {
+    Object content = args.get("content");
+    if (content instanceof String) {
+      attachmentBytes.add(Base64.getMimeDecoder().decode((String) content).length);
+    } else if (content instanceof byte[]) {
+      attachmentBytes.add(((byte[]) content).length);
+    }
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("fk_id", string(args, "executionid"));
+    result.put("fk_table", "executions");
+    result.put("title", string(args, "title"));
+    result.put("description", string(args, "description"));
+    result.put("file_name", string(args, "filename"));
+    result.put("file_type", string(args, "filetype"));
+    return result;
+  }
+
+  private Map<String, Object> caseDetails(StubCase stubCase) {
+    Map<String, Object> details = new LinkedHashMap<>();
+    details.put("id", stubCase.id);
+    details.put("testcase_id", stubCase.id);
+    details.put("name", stubCase.name);
+    details.put("parent_id", stubCase.suiteId);
+    details.put("testsuite_id", stubCase.suiteId);
+    details.put("node_type_id", "3");
+    details.put("version", String.valueOf(stubCase.version));
+    details.put("tc_external_id", stubCase.id);
+    details.put("full_tc_external_id", "STUB-" + stubCase.id);
+    details.put("summary", "");
+    details.put("preconditions", "");
+    details.put("status", "7");
+    details.put("importance", "2");
+    details.put("execution_type", "2");
+    details.put("active", "1");
+    List<Object> steps = new ArrayList<>();
+    int number = 0;
+    for (Object step : stubCase.steps) {
+      Map<String, Object> stepDetails = new LinkedHashMap<>();
+      if (step instanceof Map) {
+        ((Map<?, ?>) step).forEach((key, value) -> stepDetails.put(String.valueOf(key), value));
+      }
+      stepDetails.put("id", stubCase.id + "." + number);
+      stepDetails.putIfAbsent("step_number", String.valueOf(number++));
+      stepDetails.putIfAbsent("expected_results", "");
+      stepDetails.putIfAbsent("execution_type", "2");
+      stepDetails.put("active", "1");
+      steps.add(stepDetails);
+    }
+    details.put("steps", steps);
+    return details;
+  }
+
+  private String nextId() {
+    return String.valueOf(ids.incrementAndGet());
+  }
+
+  private static List<Object> created(Object id) {
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("status", true);
+    result.put("id", id);
+    result.put("message", "Success!");
+    result.put("additionalInfo", "");
+    List<Object> response = new ArrayList<>();
+    response.add(result);
+    return response;
+  }
+
+  private static List<Object> error(int code, String message) {
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("code", code);
+    result.put("message", message);
+    List<Object> response = new ArrayList<>();
+    response.add(result);
+    return response;
+  }
+
+  private static String string(Map<String, Object> args, String key) {
+    Object value = args.get(key);
+    return null == value ? null : value.toString();
+  }
+
+  private static Object parseValue(Element valueElement) {
+    Element typed = null;
+    for (Node node = valueElement.getFirstChild(); null != node; node = node.getNextSibling()) {
+      if (node instanceof Element) {
+        typed = (Element) node;
+        break;
+      }
+    }
+    if (null == typed) {
+      return valueElement.getTextContent();
+    }
+    switch (typed.getLocalName() == null ? typed.getTagName() : typed.getLocalName()) {
+      case "int":
+      case "i4":
+        return Integer.valueOf(text(typed).trim());
+      case "boolean":
+        return "1".equals(text(typed).trim());
+      case "double":
+        return Double.valueOf(text(typed).trim());
+      case "base64":
+        return Base64.getMimeDecoder().decode(text(typed));
+      case "nil":
+        return null;
+      case "struct":
+        Map<String, Object> struct = new HashMap<>();
+        for (Element member : children(typed, "member")) {
+          struct.put(text(child(member, "name")), parseValue(child(member, "value")));
+        }
+        return struct;
+      case "array":
+        List<Object> array = new ArrayList<>();
+        Element data = child(typed, "data");
+        if (null != data) {
+          for (Element value : children(data, "value")) {
+            array.add(parseValue(value));
+          }
+        }
+        return array;
+      default:
+        return text(typed);
+    }
+  }
+
+  private static String value(Object object) {
+    StringBuilder xml = new StringBuilder("<value>");
+    if (null == object) {
+      xml.append("<string></string>");
+    } else if (object instanceof Boolean) {
+      xml.append("<boolean>").append((Boolean) object ? 1 : 0).append("</boolean>");
+    } else if (object instanceof Integer) {
+      xml.append("<int>").append(object).append("</int>");
+    } else if (object instanceof Number) {
+      xml.append("<double>").append(object).append("</double>");
+    } else if (object instanceof Map) {
+      xml.append("<struct>");
+      ((Map<?, ?>) object).forEach((key, member) -> xml.append("<member><name>").append(escape(key))
+          .append("</name>").append(value(member)).append("</member>"));
+      xml.append("</struct>");
+    } else if (object instanceof List) {
+      xml.append("<array><data>");
+      ((List<?>) object).forEach(element -> xml.append(value(element)));
+      xml.append("</data></array>");
+    } else {
+      xml.append("<string>").append(escape(object)).append("</string>");
+    }
+    return xml.append("</value>").toString();
+  }
+
+  private static String escape(Object text) {
+    return String.valueOf(text).replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+  }
+
+  private static Element child(Element parent, String name) {
+    List<Element> found = children(parent, name);
+    return found.isEmpty() ? null : found.get(0);
+  }
+
+  private static List<Element> children(Element parent, String name) {
+    List<Element> result = new ArrayList<>();
+    for (Node node = parent.getFirstChild(); null != node; node = node.getNextSibling()) {
+      if (node instanceof Element && name.equals(((Element) node).getTagName())) {
+        result.add((Element) node);
+      }
+    }
+    return result;
+  }
+
+  private static String text(Element element) {
+    return null == element ? null : element.getTextContent();
+  }
+}
@@ -0,0 +1,135 @@
+package com.datengaertnerei.test;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.datengaertnerei.test.TestlinkStep.TestStatus;
+
+import br.eti.kinoshita.testlinkjavaapi.constants.ExecutionStatus;
+import br.eti.kinoshita.testlinkjavaapi.model.TestSuite;
+
+/**
+ * Uploads test cases to the stub server with a context of its own, so the
+ * settings read on creation of context and uploader can be varied.
+ */
+public class TestlinkUploaderTest {
+
+  private TestlinkStubServer server;
+  private final List<TestlinkIntegrationContext> contexts = new ArrayList<>();
+
+  @BeforeMethod
+  public void startServer() throws IOException {
+    server = new TestlinkStubServer(4);
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void stopServer() {
+    contexts.forEach(TestlinkIntegrationContext::shutdown);
+    contexts.clear();
+    if (null != server) {
+      server.close();
+      server = null;
+    }
+  }
+
+  @Test
+  public void testResumeSkipsReportedCases() {
+    TestlinkIntegrationContext tlContext = createContext(false);
+    upload(tlContext, testCase("PassedTest", ExecutionStatus.PASSED),
+        testCase("FailedTest", ExecutionStatus.FAILED));
+    assertEquals(server.getExecutionCount(), 2);
+
+    System.setProperty("TestlinkIntegrationListener.Resume", "true");
+    try {
+      upload(tlContext, testCase("PassedTest", ExecutionStatus.PASSED),
+          testCase("FailedTest", ExecutionStatus.PASSED));
+    } finally {
+      System.clearProperty("TestlinkIntegrationListener.Resume");
+    }
+    // only the changed result is reported again
+    assertEquals(server.getCallCount("tl.reportTCResult"), 3);
+    assertEquals(server.getExecutionCount(), 3);
+  }
+
+  @Test
+  public void testOverwriteReplacesExecution() {
+    TestlinkIntegrationContext tlContext = createContext(true);
+    upload(tlContext, testCase("SomeTest", ExecutionStatus.PASSED));
+    upload(tlContext, testCase("SomeTest", ExecutionStatus.FAILED));
+
+    // the second result replaces the execution of the build
+    assertEquals(server.getCallCount("tl.reportTCResult"), 2);
+    assertEquals(server.getExecutionCount(), 1);
+  }
+
+  @Test
+  public void testNewVersionUpdatesPlan() {
+    TestlinkIntegrationContext tlContext = createContext(false);
+    upload(tlContext, testCase("SomeTest", ExecutionStatus.PASSED, "testMethod"));
+    // another step creates a new version of the test case
+    upload(tlContext, testCase("SomeTest", ExecutionStatus.PASSED, "testMethod", "otherMethod"));
+
+    // the assignment is updated with overwrite, the plan is kept
+    assertEquals(server.getVersionUpdateCount(), 1);
+    assertEquals(server.getCallCount("tl.createTestPlan"), 1);
+    assertEquals(server.getExecutionCount(), 2);
+  }
+
+  @Test
+  public void testDeletedSuiteIsResolvedAgain() {
+    TestlinkIntegrationContext tlContext = createContext(false);
+    upload(tlContext, testCase("SomeTest", ExecutionStatus.PASSED));
+    server.deleteSuite("UploaderTestSuite");
+
+    // the cached suite id is stale, the suite is created again in the same run
+    upload(tlContext, testCase("SomeTest", ExecutionStatus.PASSED));
+    assertEquals(server.getCallCount("tl.createTestSuite"), 2);
+    assertEquals(server.getExecutionCount(), 2);
+  }
+
+  private TestlinkIntegrationContext createContext(boolean overwrite) {
+    System.setProperty("TestlinkIntegrationContext.CacheDir", "target/no-cache");
+    System.setProperty("TestlinkIntegrationContext.Overwrite", String.valueOf(overwrite));
+    try {
+      TestlinkIntegrationContext tlContext =
+          new TestlinkIntegrationContext(server.getUrl().toString(), "stub", "stub");
+      contexts.add(tlContext);
+      return tlContext;
+    } finally {
+      System.clearProperty("TestlinkIntegrationContext.CacheDir");
+      System.clearProperty("TestlinkIntegrationContext.Overwrite");
+    }
+  }
+
+  private static void upload(TestlinkIntegrationContext tlContext, TestlinkCase... testCases) {
+    TestlinkProject tlProject = tlContext.connectAsync("UploaderTest", "1.0").join();
+    TestSuite suite = tlContext.getSuite(tlProject.getProject(), "UploaderTestSuite");
+    TestlinkUploader uploader = new TestlinkUploader(tlContext, tlProject, suite, false, null);
+    try {
+      for (TestlinkCase testCase : testCases) {
+        uploader.submit(testCase);
+      }
+    } finally {
+      // waits for all submitted uploads, so none outlives the test
+      uploader.finish();
+    }
+  }
+
+  private static TestlinkCase testCase(String name, ExecutionStatus status, String... stepNames) {
+    TestlinkCase testCase = new TestlinkCase(name);
+    for (String stepName : stepNames.length == 0 ? new String[] {"testMethod"} : stepNames) {
+      TestlinkStep step = new TestlinkStep(stepName, "No parameters.\r\n");
+      step.setStatus(ExecutionStatus.PASSED == status ? TestStatus.PASSED : TestStatus.FAILED);
+      testCase.addStep(step);
+    }
+    testCase.updateStatus(status);
+    return testCase;
+  }
+}